@@ -0,0 +1,83 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks loading a cipher and the analyses that scale linearly with it,
+ * along with the sampled analysis that shouldn't.
+ * 
+ * @author Hristo Hristov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AnalysisBenchmark
+{
+	@Param({ "1024", "1048576", "67108864", "1073741824" })
+	public long size;
+	
+	private File m_ciphertext;
+	private CharSequence m_cipher;
+	private Profile m_profile;
+	
+	@Setup
+	public void setUp() throws IOException
+	{
+		Inputs.silence();
+		m_ciphertext = Inputs.ciphertext(size);
+		m_cipher = new Text(m_ciphertext, true).getContents();
+		m_profile = Inputs.profile();
+	}
+	
+	@Benchmark
+	public Text textConstruction()
+	{
+		return new Text(m_ciphertext, true);
+	}
+	
+	@Benchmark
+	public int friedmanTest()
+	{
+		return Friedman.test(m_cipher, m_profile.getIndexOfCoincidence());
+	}
+	
+	@Benchmark
+	public TopK keyLengthEstimate()
+	{
+		return new KeyLengthEstimator(KeyLengthEstimator.KASISKI, 
+				KeyLengthEstimator.friedman(m_profile.getIndexOfCoincidence())).estimate(m_cipher, 1);
+	}
+	
+	@Benchmark
+	public String sampledAnalysis() throws IOException
+	{
+		return new CipherSampler(m_profile).analyse(m_ciphertext).getKey();
+	}
+	
+	@Benchmark
+	public String vigenereCryptAnalyse()
+	{
+		return Vigenere.cryptAnalyse(m_profile.getSample(), 
+				Vigenere.breakDownCipher(m_cipher, Inputs.KEY.length()));
+	}
+}
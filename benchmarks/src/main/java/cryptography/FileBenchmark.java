@@ -0,0 +1,81 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the file transforms in every streaming mode.
+ * Scores are whole files per second, multiply by the size for bytes per second.
+ * 
+ * @author Hristo Hristov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileBenchmark
+{
+	@Param({ "1024", "1048576", "67108864", "1073741824" })
+	public long size;
+	
+	@Param({ "Buffered", "Mapped", "Parallel" })
+	public String mode;
+	
+	private CipherStream.Mode m_mode;
+	private File m_plaintext;
+	private File m_ciphertext;
+	private File m_output;
+	
+	@Setup
+	public void setUp() throws IOException
+	{
+		Inputs.silence();
+		m_mode = CipherStream.Mode.valueOf(mode);
+		m_plaintext = Inputs.plaintext(size);
+		m_ciphertext = Inputs.ciphertext(size);
+		m_output = File.createTempFile("vigenere-benchmark", ".txt");
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		m_output.delete();
+	}
+	
+	@Benchmark
+	public void vigenereEncrypt()
+	{
+		Vigenere.encrypt(m_plaintext, m_output, Inputs.KEY, m_mode);
+	}
+	
+	@Benchmark
+	public void vigenereDecrypt()
+	{
+		Vigenere.decrypt(m_ciphertext, m_output, Inputs.KEY, m_mode);
+	}
+	
+	@Benchmark
+	public void caesarDecrypt()
+	{
+		Caesar.decrypt(m_ciphertext, m_output, 3, m_mode);
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * Generates the inputs shared by the benchmarks. English-like plaintext is made of
+ * common words picked at random, so letter frequencies, repeats and coincidences 
+ * look like the real thing. Files are cached in the temp dir between runs.
+ * 
+ * @author Hristo Hristov
+ */
+class Inputs
+{
+	// Key used to encrypt the generated plaintext
+	static final String KEY = "benchmark";
+	
+	private static final File DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "vigenere-benchmarks");
+	
+	private static final String[] WORDS = {
+		"the", "of", "and", "to", "in", "a", "is", "that", "for", "it", "as", "was", "with", "be", "by",
+		"on", "not", "he", "this", "are", "or", "his", "from", "at", "which", "but", "have", "an", "had",
+		"they", "you", "were", "their", "one", "all", "we", "can", "her", "has", "there", "been", "if",
+		"more", "when", "will", "would", "who", "so", "no", "she", "other", "its", "time", "into", "only",
+		"could", "new", "them", "man", "some", "these", "then", "two", "first", "may", "any", "like",
+		"now", "my", "such", "make", "over", "our", "even", "most", "me", "state", "after", "also",
+		"made", "many", "did", "must", "before", "back", "see", "through", "way", "where", "get",
+		"much", "go", "well", "your", "know", "should", "down", "work", "year", "because", "come",
+		"people", "just", "say", "each", "those", "take", "day", "good", "how", "long", "own", "too",
+		"little", "use", "us", "very", "great", "still", "men", "here", "life", "both", "between",
+		"old", "under", "last", "never", "place", "same", "another", "think", "house", "while", "high",
+		"right", "might", "came", "off", "find", "states", "since", "used", "give", "against", "three",
+		"himself", "look", "few", "general", "hand", "school", "part", "small", "american", "again",
+		"world", "government", "without", "country", "cipher", "letter", "message", "secret", "key"
+	};
+	
+	private static final String[] SEPARATORS = { " ", " ", " ", " ", " ", " ", ", ", ". ", ".\n" };
+	
+	/**
+	 * Stops the analysers from printing, so the console isn't what gets measured
+	 */
+	static void silence()
+	{
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+	
+	/**
+	 * @param size	Size of the file in bytes
+	 * @return		A file of English-like ASCII plaintext
+	 */
+	static File plaintext(long size) throws IOException
+	{
+		File file = new File(DIRECTORY, "plaintext-" + size + ".txt");
+		
+		if (file.length() != size)
+		{
+			generate(file, size, 1);
+		}
+		return file;
+	}
+	
+	/**
+	 * @param size	Size of the file in bytes
+	 * @return		The plaintext of the same size encrypted with KEY
+	 */
+	static File ciphertext(long size) throws IOException
+	{
+		File file = new File(DIRECTORY, "ciphertext-" + size + ".txt");
+		
+		if (file.length() != size)
+		{
+			CipherStream.transformMapped(plaintext(size), file, 
+					CipherEngine.create(CipherEngine.Type.Vigenere, KEY, false));
+		}
+		return file;
+	}
+	
+	/**
+	 * @return	A language profile of 1 MB of plaintext, generated independently of the inputs
+	 */
+	static Profile profile() throws IOException
+	{
+		File sample = new File(DIRECTORY, "sample.txt");
+		
+		if (sample.length() != 1 << 20)
+		{
+			generate(sample, 1 << 20, 2);
+		}
+		return Profile.build(new Text(sample, true), true);
+	}
+	
+	/**
+	 * Writes random words until the file is exactly the given size
+	 */
+	private static void generate(File file, long size, long seed) throws IOException
+	{
+		DIRECTORY.mkdirs();
+		Random random = new Random(seed);
+		
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), CipherStream.BLOCK_SIZE))
+		{
+			long written = 0;
+			while (written < size)
+			{
+				String word = WORDS[random.nextInt(WORDS.length)] 
+						+ SEPARATORS[random.nextInt(SEPARATORS.length)];
+				
+				int length = (int) Math.min(word.length(), size - written);
+				writer.write(word, 0, length);
+				written += length;
+			}
+		}
+	}
+}
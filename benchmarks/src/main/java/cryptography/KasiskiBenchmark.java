@@ -0,0 +1,58 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks Kasiski's test. The n-gram index keeps every occurrence of every 
+ * n-gram length, so inputs stop at 16 MB to stay within a reasonable heap.
+ * 
+ * @author Hristo Hristov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class KasiskiBenchmark
+{
+	@Param({ "1024", "65536", "1048576", "16777216" })
+	public long size;
+	
+	private CharSequence m_cipher;
+	
+	@Setup
+	public void setUp() throws IOException
+	{
+		Inputs.silence();
+		m_cipher = new Text(Inputs.ciphertext(size), true).getContents();
+	}
+	
+	@Benchmark
+	public int kasiskiTest()
+	{
+		return Kasiski.test(m_cipher);
+	}
+	
+	@Benchmark
+	public int kasiskiLongKeyTest()
+	{
+		return Kasiski.test(m_cipher, Kasiski.MAX_LONG_KEY_LENGTH);
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks decrypting a range at a random offset of a cipher with a letter index.
+ * Scores are microseconds per range and should stay flat as the file grows.
+ * 
+ * @author Hristo Hristov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RangeBenchmark
+{
+	@Param({ "1048576", "67108864", "1073741824" })
+	public long size;
+	
+	@Param({ "4096" })
+	public int rangeSize;
+	
+	private File m_ciphertext;
+	private LetterIndex m_index;
+	private final Random m_random = new Random(1);
+	
+	@Setup
+	public void setUp() throws IOException
+	{
+		Inputs.silence();
+		m_ciphertext = Inputs.ciphertext(size);
+		m_index = LetterIndex.loadOrBuild(m_ciphertext);
+	}
+	
+	@Benchmark
+	public byte[] vigenereDecryptRange() throws IOException
+	{
+		long from = (long) (m_random.nextDouble() * (size - rangeSize));
+		return Vigenere.decryptRange(m_ciphertext, m_index, Inputs.KEY, from, from + rangeSize);
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+/**
+ * Receives progress and metrics from the analysers instead of them printing
+ * inside their loops. Every method does nothing by default, so a listener
+ * only overrides what it cares about. Calls may come from several threads.
+ *
+ * @author Hristo Hristov
+ */
+interface AnalysisListener
+{
+	// Ignores everything, used unless another listener is installed
+	AnalysisListener NONE = new AnalysisListener()
+	{
+	};
+	
+	/**
+	 * Adds to a counter, e.g. of repeating words found
+	 * 
+	 * @param counter	Name of the counter
+	 * @param amount	Amount to add
+	 */
+	default void count(String counter, long amount)
+	{
+	}
+	
+	/**
+	 * Reports the time taken by a phase of an analysis
+	 * 
+	 * @param phase		Name of the phase
+	 * @param nanos		Time taken in nanoseconds
+	 */
+	default void phaseFinished(String phase, long nanos)
+	{
+	}
+	
+	/**
+	 * Reports units of work done, e.g. letters scanned, used to gauge throughput
+	 * 
+	 * @param gauge		Name of the gauge
+	 * @param units		Units of work done
+	 * @param nanos		Time taken in nanoseconds
+	 */
+	default void processed(String gauge, long units, long nanos)
+	{
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Engine for the Autokey cipher, which starts off with the key and then keeps
+ * going with the plaintext itself, so the key stream never repeats. Each letter
+ * depends on the plaintext that came before it, so a stream has to be
+ * transformed in order by an engine of its own.
+ *
+ * @author Hristo Hristov
+ */
+class AutokeyEngine implements CipherEngine
+{
+	// Key letters in the range [0,25], the start of the key stream
+	private final int[] m_iPrimer;
+	private final boolean m_bDecrypt;
+	private final boolean m_bPreserveCase;
+	
+	// The last plaintext letters, the next key letters once the primer is used up
+	private final int[] m_iHistory;
+	private long m_lPosition = 0;
+	
+	/**
+	 * @param key			Key letters in the range [0,25]
+	 * @param decrypt		If true, the engine decrypts
+	 * @param preserveCase	If true, capitals stay capitals, otherwise they're lowercased
+	 */
+	AutokeyEngine(int[] key, boolean decrypt, boolean preserveCase)
+	{
+		m_iPrimer = key.clone();
+		m_bDecrypt = decrypt;
+		m_bPreserveCase = preserveCase;
+		m_iHistory = new int[key.length];
+	}
+	
+	@Override
+	public int getPeriod()
+	{
+		return 0;
+	}
+	
+	@Override
+	public long transform(ByteBuffer source, ByteBuffer target, long keyPos)
+	{
+		checkPosition(keyPos);
+		
+		int limit = source.limit();
+		for (int i = 0; i < limit; i++)
+		{
+			byte b = source.get(i);
+			int letter = TabulaRecta.LETTERS[b & 0xFF];
+			int base = m_bPreserveCase && b <= 'Z' ? 'A' : 'a';
+			
+			target.put(i, letter < 0 ? b : (byte) (base + next(letter)));
+		}
+		return m_lPosition;
+	}
+	
+	@Override
+	public long transform(char[] block, int from, int to, long keyPos)
+	{
+		checkPosition(keyPos);
+		
+		for (int i = from; i < to; i++)
+		{
+			int ch = m_bPreserveCase ? block[i] : Character.toLowerCase((int) block[i]);
+			
+			// Only reached when preserving case, any other capital has been lowercased already
+			int base = 'a';
+			if (ch >= 'A' && ch <= 'Z')
+			{
+				ch += 'a' - 'A';
+				base = 'A';
+			}
+			
+			// Keep numbers, spaces, punc. intact
+			block[i] = ch < 'a' || ch > 'z' ? (char) ch : (char) (base + next(ch - 'a'));
+		}
+		return m_lPosition;
+	}
+	
+	/**
+	 * Transforms the next letter of the stream and remembers its plaintext
+	 * 
+	 * @param letter	Letter in the range [0,25]
+	 * @return			The transformed letter
+	 */
+	private int next(int letter)
+	{
+		int slot = (int) (m_lPosition % m_iPrimer.length);
+		int k = m_lPosition < m_iPrimer.length ? m_iPrimer[slot] : m_iHistory[slot];
+		
+		int result = m_bDecrypt ? TabulaRecta.decipher(k, letter) : TabulaRecta.encipher(k, letter);
+		m_iHistory[slot] = m_bDecrypt ? result : letter;
+		m_lPosition++;
+		return result;
+	}
+	
+	private void checkPosition(long keyPos)
+	{
+		if (keyPos != m_lPosition)
+		{
+			throw new IllegalStateException(String.format(
+					"Autokey streams go in order, expected position %d but got %d", m_lPosition, keyPos));
+		}
+	}
+}
@@ -0,0 +1,477 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Cracks a whole batch of Vigenere ciphers at once, one job per cipher.
+ * Each job runs the same steps as Exercise 2: Friedman's test for the best few key
+ * lengths, cryptanalysis of the cosets for the best few keys of each, verifying those
+ * on the start of the cipher, refining the winner by quadgram scoring if the profile
+ * has quadgram counts, then optionally decrypts the cipher. Ciphers too
+ * short for the statistical tests get their key searched for by annealing instead,
+ * and cipher files too big to load get sampled, see CipherSampler.
+ * Jobs run on virtual threads where the JVM has them (Java 21+), otherwise on a
+ * fixed pool. A semaphore bounds how many run at once, and every job shares
+ * the same read-only language profile.
+ *
+ * @author Hristo Hristov
+ */
+class BatchCracker
+{
+	// Ciphers with fewer letters are searched by annealing if frequency analysis gets them wrong
+	static final int WEAK_CIPHER_LETTERS = 1000;
+	
+	// Time given to annealing a weak cipher in milliseconds, scaled down with its length
+	static final long WEAK_CIPHER_BUDGET = 1000;
+	static final long MIN_WEAK_CIPHER_BUDGET = 300;
+	
+	// Cipher files this big get sampled rather than loaded whole
+	static final long SAMPLED_CIPHER_BYTES = 16L << 20;
+	
+	// Number of key lengths, and of keys for each of them, verified before settling on a key
+	static final int VERIFIED_KEY_LENGTHS = 3;
+	static final int VERIFIED_KEYS_PER_LENGTH = 3;
+	
+	private final Profile m_profile;
+	private final int m_iMaxConcurrentJobs;
+	
+	// Refines the keys found if the profile has quadgram counts, shared like the profile
+	private final QuadgramScorer m_scorer;
+	private final KeySearch m_search;
+	private final KeyVerifier m_verifier;
+	private final CipherSampler m_sampler;
+	
+	/**
+	 * Outcome of cracking a single cipher
+	 */
+	static class Result
+	{
+		private final File m_cipherFile;
+		private final String m_strKey;
+		private final long m_lLatency;
+		private final Exception m_exception;
+		
+		private Result(File cipherFile, String key, long latency, Exception exception)
+		{
+			m_cipherFile = cipherFile;
+			m_strKey = key;
+			m_lLatency = latency;
+			m_exception = exception;
+		}
+		
+		/**
+		 * @return	The cracked cipher
+		 */
+		File getCipherFile()
+		{
+			return m_cipherFile;
+		}
+		
+		/**
+		 * @return	The key found, null if the job failed
+		 */
+		String getKey()
+		{
+			return m_strKey;
+		}
+		
+		/**
+		 * @return	Time taken by the job in nanoseconds, not counting time spent waiting for a permit
+		 */
+		long getLatency()
+		{
+			return m_lLatency;
+		}
+		
+		/**
+		 * @return	What made the job fail, null if it didn't
+		 */
+		Exception getException()
+		{
+			return m_exception;
+		}
+	}
+	
+	/**
+	 * Outcome of cracking a whole batch
+	 */
+	static class Report
+	{
+		private final List<Result> m_results;
+		private final long m_lElapsed;
+		
+		private Report(List<Result> results, long elapsed)
+		{
+			m_results = results;
+			m_lElapsed = elapsed;
+		}
+		
+		/**
+		 * @return	Result of every job in the order the ciphers were given
+		 */
+		List<Result> getResults()
+		{
+			return m_results;
+		}
+		
+		/**
+		 * @return	Wall clock time taken by the batch in nanoseconds
+		 */
+		long getElapsed()
+		{
+			return m_lElapsed;
+		}
+		
+		/**
+		 * @return	Number of jobs that found a key and, if asked to, decrypted the cipher
+		 */
+		int getCrackedCount()
+		{
+			int cracked = 0;
+			
+			for (Result result : m_results)
+			{
+				if (result.getException() == null)
+				{
+					cracked++;
+				}
+			}
+			return cracked;
+		}
+		
+		/**
+		 * @return	Number of jobs finished per second of wall clock time, failed ones included
+		 */
+		double getJobsPerSecond()
+		{
+			return m_lElapsed == 0 ? 0 : m_results.size() * 1e9 / m_lElapsed;
+		}
+		
+		/**
+		 * @return	Average time taken by a job in nanoseconds
+		 */
+		long getAverageLatency()
+		{
+			return m_results.isEmpty() ? 0 : getTotalLatency() / m_results.size();
+		}
+		
+		/**
+		 * @return	Time taken by the slowest job in nanoseconds
+		 */
+		long getMaxLatency()
+		{
+			long max = 0;
+			
+			for (Result result : m_results)
+			{
+				max = Math.max(max, result.getLatency());
+			}
+			return max;
+		}
+		
+		private long getTotalLatency()
+		{
+			long total = 0;
+			
+			for (Result result : m_results)
+			{
+				total += result.getLatency();
+			}
+			return total;
+		}
+	}
+	
+	/**
+	 * @param profile				Language profile shared by every job, only ever read
+	 * @param maxConcurrentJobs		Max number of jobs running at once
+	 */
+	BatchCracker(Profile profile, int maxConcurrentJobs)
+	{
+		if (maxConcurrentJobs < 1)
+		{
+			throw new IllegalArgumentException("At least one job has to be able to run, got " + maxConcurrentJobs);
+		}
+		m_profile = profile;
+		m_iMaxConcurrentJobs = maxConcurrentJobs;
+		m_scorer = profile.hasNGrams() ? new QuadgramScorer(profile) : null;
+		m_search = m_scorer != null ? new KeySearch(m_scorer) : null;
+		m_verifier = new KeyVerifier(profile, m_scorer);
+		m_sampler = new CipherSampler(profile);
+	}
+	
+	/**
+	 * Runs as many jobs at once as there are cores
+	 * 
+	 * @param profile	Language profile shared by every job, only ever read
+	 */
+	BatchCracker(Profile profile)
+	{
+		this(profile, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Cracks every file of a directory
+	 * 
+	 * @param cipherDirectory	Directory holding the ciphers
+	 * @param outputDirectory	Directory to store the decrypted ciphers at under the same names, null not to decrypt them
+	 * @return					Report of the batch
+	 */
+	Report crackDirectory(File cipherDirectory, File outputDirectory)
+	{
+		File[] files = cipherDirectory.listFiles(File::isFile);
+		
+		if (files == null)
+		{
+			throw new IllegalArgumentException("Not a directory: " + cipherDirectory.getPath());
+		}
+		Arrays.sort(files);
+		return crack(Arrays.asList(files), outputDirectory);
+	}
+	
+	/**
+	 * Cracks a list of ciphers
+	 * 
+	 * @param cipherFiles		Ciphers to crack
+	 * @param outputDirectory	Directory to store the decrypted ciphers at under the same names, null not to decrypt them
+	 * @return					Report of the batch
+	 */
+	Report crack(List<File> cipherFiles, File outputDirectory)
+	{
+		System.out.printf("Cracking %d ciphers, %d at a time...\n", cipherFiles.size(), m_iMaxConcurrentJobs);
+		
+		if (outputDirectory != null)
+		{
+			outputDirectory.mkdirs();
+		}
+		
+		long start = System.nanoTime();
+		List<Result> results = new ArrayList<Result>(cipherFiles.size());
+		ExecutorService executor = newExecutor();
+		
+		try
+		{
+			// Wait for a permit before submitting, so a huge batch doesn't pile up threads
+			Semaphore permits = new Semaphore(m_iMaxConcurrentJobs);
+			List<Future<Result>> futures = new ArrayList<Future<Result>>(cipherFiles.size());
+			
+			for (File cipherFile : cipherFiles)
+			{
+				permits.acquireUninterruptibly();
+				futures.add(executor.submit(() -> {
+					try
+					{
+						return crack(cipherFile, outputDirectory);
+					}
+					finally
+					{
+						permits.release();
+					}
+				}));
+			}
+			
+			for (Future<Result> future : futures)
+			{
+				results.add(getUninterruptibly(future));
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		
+		Report report = new Report(results, System.nanoTime() - start);
+		printReport(report);
+		return report;
+	}
+	
+	/**
+	 * Cracks a single cipher, failures are kept in the result rather than thrown
+	 * 
+	 * @param cipherFile		Cipher to crack
+	 * @param outputDirectory	Directory to store the decrypted cipher at, null not to decrypt it
+	 * @return					Result of the job
+	 */
+	private Result crack(File cipherFile, File outputDirectory)
+	{
+		AnalysisListener listener = Metrics.listener();
+		long start = System.nanoTime();
+		
+		try
+		{
+			String key;
+			if (cipherFile.length() >= SAMPLED_CIPHER_BYTES)
+			{
+				// A few MB settle the key, however big the file
+				key = m_sampler.analyse(cipherFile).getKey();
+			}
+			else
+			{
+				Text cipher = new Text(cipherFile, true);
+				// The job's own thread is all it gets, the other jobs need the rest
+				key = findKey(cipher.getContents(), 1);
+			}
+			
+			if (outputDirectory != null)
+			{
+				// Straight through the stream rather than Vigenere.decrypt(), which prints and swallows failures
+				long decryptStart = System.nanoTime();
+				CipherEngine engine = CipherEngine.create(CipherEngine.Type.Vigenere, key, true);
+				CipherStream.transform(cipherFile, new File(outputDirectory, cipherFile.getName()), engine,
+						CipherStream.Mode.Buffered);
+				listener.phaseFinished("batch.decrypt", System.nanoTime() - decryptStart);
+			}
+			listener.count("batch.cracked", 1);
+			return new Result(cipherFile, key, System.nanoTime() - start, null);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			listener.count("batch.failed", 1);
+			return new Result(cipherFile, null, System.nanoTime() - start, e);
+		}
+	}
+	
+	/**
+	 * Finds the key of a single cipher the same way every job of a batch does, 
+	 * searching with every core if it comes to annealing
+	 * 
+	 * @param cipher	Cipher text, letters in the range [a,z]
+	 * @return			The key found
+	 */
+	String findKey(CharSequence cipher)
+	{
+		return findKey(cipher, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Finds the key of a single cipher. Frequency analysis goes first, a weak cipher
+	 * is only annealed if the key it verifies doesn't read as English.
+	 * 
+	 * @param cipher		Cipher text, letters in the range [a,z]
+	 * @param parallelism	Number of threads to anneal a weak cipher on, 1 for the calling one
+	 * @return				The key found
+	 */
+	String findKey(CharSequence cipher, int parallelism)
+	{
+		TopK keyLengths = Friedman.rankKeyLengths(cipher, m_profile.getIndexOfCoincidence(), 
+				Friedman.MIN_KEY_LENGTH, Friedman.MAX_KEY_LENGTH, VERIFIED_KEY_LENGTHS);
+		
+		// Friedman's test can be off by a multiple, the start of the cipher tells which key is right
+		List<Vigenere.Candidate> candidates = new ArrayList<Vigenere.Candidate>();
+		for (int rank = 0; rank < keyLengths.size(); rank++)
+		{
+			CharSequence[] streams = Vigenere.breakDownCipher(cipher, keyLengths.getId(rank));
+			candidates.addAll(Arrays.asList(Vigenere.rankKeys(m_profile.getSample(), streams, VERIFIED_KEYS_PER_LENGTH)));
+		}
+		Vigenere.Candidate[] verified = m_verifier.verify(cipher, candidates.toArray(new Vigenere.Candidate[0]));
+		
+		if (m_search != null && cipher.length() < WEAK_CIPHER_LETTERS
+				&& (verified.length == 0 || !m_scorer.isPlausible(verified[0].getScore(), cipher.length())))
+		{
+			// Too few letters for the statistical tests to get right, search every key length instead
+			long budget = Math.max(MIN_WEAK_CIPHER_BUDGET, WEAK_CIPHER_BUDGET * cipher.length() / WEAK_CIPHER_LETTERS);
+			return m_search.search(cipher, getKeyLengths(), budget, Long.MAX_VALUE, parallelism);
+		}
+		
+		String key = verified[0].getKey();
+		if (m_scorer != null)
+		{
+			key = m_scorer.refine(cipher, key);
+		}
+		return key;
+	}
+	
+	/**
+	 * @return	Every key length Friedman's test would consider
+	 */
+	private static int[] getKeyLengths()
+	{
+		int[] keyLengths = new int[Friedman.MAX_KEY_LENGTH - Friedman.MIN_KEY_LENGTH + 1];
+		
+		for (int i = 0; i < keyLengths.length; i++)
+		{
+			keyLengths[i] = Friedman.MIN_KEY_LENGTH + i;
+		}
+		return keyLengths;
+	}
+	
+	/**
+	 * Prints the latency of every job followed by the throughput of the batch
+	 */
+	private static void printReport(Report report)
+	{
+		for (Result result : report.getResults())
+		{
+			String outcome = result.getException() == null ? "key: " + result.getKey()
+					: "failed: " + result.getException();
+			System.out.printf("%s | %8.2f ms | %s\n", result.getCipherFile().getName(),
+					result.getLatency() / 1e6, outcome);
+		}
+		System.out.printf("Cracked %d of %d ciphers in %.2f s, %.1f jobs/sec, avg latency %.2f ms, max latency %.2f ms\n",
+				report.getCrackedCount(), report.getResults().size(), report.getElapsed() / 1e9, report.getJobsPerSecond(),
+				report.getAverageLatency() / 1e6, report.getMaxLatency() / 1e6);
+	}
+	
+	/**
+	 * Creates an executor starting a virtual thread per job if the JVM supports them
+	 * 
+	 * @return	The executor to run the jobs on
+	 */
+	private ExecutorService newExecutor()
+	{
+		try
+		{
+			// Looked up reflectively, so the code still builds and runs on Java 17
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newFixedThreadPool(m_iMaxConcurrentJobs);
+		}
+	}
+	
+	/**
+	 * Waits for a job to finish, jobs never throw so the only failure left is an interrupt
+	 */
+	private static Result getUninterruptibly(Future<Result> future)
+	{
+		boolean interrupted = false;
+		
+		try
+		{
+			while (true)
+			{
+				try
+				{
+					return future.get();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+				catch (ExecutionException e)
+				{
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		}
+		finally
+		{
+			if (interrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -4,12 +4,7 @@
 package cryptography;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import cryptography.Util;
 
@@ -32,41 +27,77 @@ class Caesar
 	 * @return			The most congruent shift value for the cipher based on the stats
 	 */
 	static int cryptAnalyse(Text sample, Text cipher)
+	{
+		TopK best = rankShifts(sample, cipher, 1);
+		
+		System.out.printf("Shift: %2d | Deviation: %4.2f %%\n", best.getId(0), -best.getScore(0));
+		return best.getId(0);
+	}
+	
+	/**
+	 * Ranks the shift values of a Caesar cipher by how well the shifted letter
+	 * frequencies match those of English
+	 * 
+	 * @param 	sample	A big chunk of English text
+	 * @param 	cipher	The encrypted string of text
+	 * @param	k		Number of shift values to keep
+	 * @return			The k most congruent shift values, scored by minus their deviation in %
+	 */
+	static TopK rankShifts(Text sample, Text cipher, int k)
 	{
 		System.out.println("Cryptanalysing monoalphabetical cipher...");
 		
-		float[] deviation = new float[Util.ALPHABET_SIZE];
+		AnalysisListener listener = Metrics.listener();
+		long start = System.nanoTime();
 		
-		// Used to sort deviation values
-		Map<Integer, Float> deviationMap = new LinkedHashMap<Integer, Float>();
+		TopK ranking = new TopK(k);
 		
 		// s means shift, l means letter
 		for (int s = 0; s < Util.ALPHABET_SIZE; s++)
 		{
+			float deviation = 0.0f;
 			for (int l = 0; l < Util.ALPHABET_SIZE; l++)
 			{
-				deviation[s] += Math.abs(
+				deviation += Math.abs(
 					Util.getFrequency(sample.getLetterCount(l), sample.getTotalLetters()) 
 				  - Util.getFrequency(cipher.getLetterCount((l + s) % Util.ALPHABET_SIZE), 
 						  			  cipher.getTotalLetters()));
 			}
-			System.out.printf("Shifting the cipher by %2d deviates it from the norm by %6.2f %%\n", s, deviation[s]);
 			
-			// Used to sort deviation values
-			deviationMap.put(s, deviation[s]);
+			// The lower the deviation the better, the first shift wins a tie
+			ranking.offer(s, -deviation);
 		}
 		
-		System.out.println("\nSorting shift values by deviation...");
-		deviationMap = Util.sortMap(deviationMap, true, true);
-		
-		for (Entry<Integer, Float> entry : deviationMap.entrySet())
-		{
-			System.out.printf("Shift: %2d | Deviation: %4.2f %%\n", 
-					entry.getKey(), entry.getValue());
-		}
-		System.out.println();
+		listener.count("caesar.shifts", Util.ALPHABET_SIZE);
+		listener.phaseFinished("caesar.cryptanalysis", System.nanoTime() - start);
+		listener.processed("caesar.letters", cipher.getTotalLetters(), System.nanoTime() - start);
 		
-		return (Integer) deviationMap.keySet().toArray()[0];
+		return ranking;
+	}
+	
+	/**
+	 * Attempts a monoalphabetic cipher-attack on a stream of text, e.g. a Coset of a Vigenere cipher
+	 * 
+	 * @param 	sample	A big chunk of English text
+	 * @param 	cipher	The encrypted stream of text
+	 * @return			The most congruent shift value for the cipher based on the stats
+	 */
+	static int cryptAnalyse(Text sample, CharSequence cipher)
+	{
+		return cryptAnalyse(sample, new Text(cipher));
+	}
+	
+	/**
+	 * Ranks the shift values of a stream of text, e.g. a Coset of a Vigenere cipher
+	 * 
+	 * @param 	sample	A big chunk of English text
+	 * @param 	cipher	The encrypted stream of text
+	 * @param	k		Number of shift values to keep
+	 * @return			The k most congruent shift values, scored by minus their deviation in %
+	 */
+	static TopK rankShifts(Text sample, CharSequence cipher, int k)
+	{
+		return rankShifts(sample, new Text(cipher), k);
 	}
 	
 	/**
@@ -77,50 +108,57 @@ class Caesar
 	 * @param shift				Shift value to use
 	 */
 	static void decrypt(File encryptedFile, File decryptedFile, int shift)
+	{
+		decrypt(encryptedFile, decryptedFile, shift, CipherStream.Mode.Buffered);
+	}
+	
+	/**
+	 * Decrypts a a monoalphabetic caesar cipher given a shift value
+	 * 
+	 * @param encryptedFile		File to decrypt
+	 * @param decryptedFile		File to store the decrypted version at
+	 * @param shift				Shift value to use
+	 * @param mode				Buffered to decode chars, Mapped or Parallel for plain ASCII files
+	 */
+	static void decrypt(File encryptedFile, File decryptedFile, int shift, CipherStream.Mode mode)
 	{
 		try
 		{
 			System.out.printf("Opening \"%s\" for decryption... ", encryptedFile.getPath());
 			
-			// Open cipher for decryption
-			FileReader reader = new FileReader(encryptedFile);
-			
-			// Create a file to store the decrypted version
-			FileWriter writer = new FileWriter(decryptedFile);
-			
-			// Go through every letter of the cipher text
-			int ch;
-			while ((ch = reader.read()) != -1)
-			{
-				// Not sure if lowercasing is necessary, but I'll keep it
-				ch = Character.toLowerCase(ch);
-				
-				// Keep numbers, spaces, punc. intact
-				// assuming they're not encrypted
-				if (ch < 'a' || ch > 'z')
-				{
-					writer.write(ch);
-					continue;
-				}
-				
-				// Perform the shift and write to the new file
-				int decryptedch = ch - shift;
-				
-				decryptedch = Util.normalizeLetter(decryptedch);
-				
-				writer.write(decryptedch);
-			}
+			// A Caesar cipher is a Vigenere cipher with a single letter key
+			CipherEngine engine = PeriodicEngine.ofShifts(CipherStream.normalizeShifts(new int[] { shift }, true));
+			CipherStream.transform(encryptedFile, decryptedFile, engine, mode);
 			
 			System.out.println("finished decrypting file.");
 			System.out.printf("Decrypted version stored at: \"%s\"\n", decryptedFile.getPath());
-			
-			reader.close();
-			writer.flush();
-			writer.close();
         }
 		catch (IOException e)
 		{
             e.printStackTrace();
         }
 	}
+	
+	/**
+	 * Decrypts an ASCII monoalphabetic caesar cipher given a shift value, overwriting the cipher
+	 * 
+	 * @param file		File to decrypt in place
+	 * @param shift		Shift value to use
+	 */
+	static void decryptInPlace(File file, int shift)
+	{
+		try
+		{
+			System.out.printf("Decrypting \"%s\" in place... ", file.getPath());
+			
+			CipherEngine engine = PeriodicEngine.ofShifts(CipherStream.normalizeShifts(new int[] { shift }, true));
+			CipherStream.transformInPlace(file, engine);
+			
+			System.out.println("finished decrypting file.");
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
 }
@@ -0,0 +1,99 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A polyalphabetic cipher as seen by the streaming engine, i.e. something that
+ * transforms the letters of a block while keeping track of where in the key
+ * stream it is. Letters are lowercased unless the engine preserves case,
+ * every other char is kept intact.
+ *
+ * @author Hristo Hristov
+ */
+interface CipherEngine
+{
+	enum Type
+	{
+		Vigenere,
+		Beaufort,
+		VariantBeaufort,
+		Autokey
+	}
+	
+	/**
+	 * Creates an engine for a cipher
+	 * 
+	 * @param type		Cipher to use
+	 * @param key		Key in the range [a,z]
+	 * @param decrypt	If true, the engine decrypts
+	 * @return			An engine lowercasing every letter, Autokey engines can't be shared between streams
+	 */
+	static CipherEngine create(Type type, String key, boolean decrypt)
+	{
+		return create(type, key, decrypt, false);
+	}
+	
+	/**
+	 * Creates an engine for a cipher
+	 * 
+	 * @param type			Cipher to use
+	 * @param key			Key in the range [a,z]
+	 * @param decrypt		If true, the engine decrypts
+	 * @param preserveCase	If true, capitals stay capitals, e.g. to keep logs readable once decrypted
+	 * @return				An engine for a single stream, Autokey engines can't be shared between streams
+	 */
+	static CipherEngine create(Type type, String key, boolean decrypt, boolean preserveCase)
+	{
+		int[] shifts = Vigenere.breakDownKey(key);
+		
+		switch (type)
+		{
+		case Vigenere:
+			return PeriodicEngine.ofShifts(CipherStream.normalizeShifts(shifts, decrypt), preserveCase);
+		
+		case VariantBeaufort:
+			// Encrypts the way Vigenere decrypts and the other way round
+			return PeriodicEngine.ofShifts(CipherStream.normalizeShifts(shifts, !decrypt), preserveCase);
+		
+		case Beaufort:
+			// Reciprocal, the same engine does both
+			return PeriodicEngine.ofBeaufort(shifts, preserveCase);
+		
+		case Autokey:
+			return new AutokeyEngine(shifts, decrypt, preserveCase);
+		
+		default:
+			throw new IllegalArgumentException("Unknown cipher: " + type);
+		}
+	}
+	
+	/**
+	 * @return	Number of letters after which the key stream repeats, 0 if it never does.
+	 * 			Only periodic engines can start in the middle of a stream, e.g. in parallel chunks.
+	 */
+	int getPeriod();
+	
+	/**
+	 * Transforms the ASCII letters of a byte block, all other bytes are kept intact
+	 * 
+	 * @param source	Bytes to transform, from index 0 up to the limit
+	 * @param target	Bytes to store the result at, may be the source itself
+	 * @param keyPos	Position within the key stream to start at
+	 * @return			Position within the key stream after the block
+	 */
+	long transform(ByteBuffer source, ByteBuffer target, long keyPos);
+	
+	/**
+	 * Transforms the letters of a block of chars in place
+	 * 
+	 * @param block		Chars to transform
+	 * @param from		Index of the first char
+	 * @param to		Index after the last char
+	 * @param keyPos	Position within the key stream to start at
+	 * @return			Position within the key stream after the block
+	 */
+	long transform(char[] block, int from, int to, long keyPos);
+}
@@ -0,0 +1,464 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+import cryptography.Util;
+
+/**
+ * Finds the key of a Vigenere cipher file from samples of it, rather than the whole of it,
+ * so a file of many GB takes about as long as one of a few MB. Blocks are read at a stride
+ * over the file, and the stride halves every round, the new blocks landing halfway between
+ * the old ones, until the key is found with enough confidence. Once the stride gets down to
+ * the block size the whole file has been read.
+ *
+ * Where a block starts in the key is unknown, since the key only moves on letters. The
+ * average index of coincidence of the cosets doesn't depend on it, so the key length is
+ * estimated block by block. For the key itself, every block gets rotated so its cosets
+ * match those of the blocks aligned before it the best. The first block starts the file,
+ * so the key comes out unrotated.
+ * Only ASCII letters are counted, so the file has to be in an ASCII compatible charset.
+ *
+ * @author Hristo Hristov
+ */
+class CipherSampler
+{
+	// Bytes read at once from a single place of the file
+	static final int BLOCK_SIZE = 1 << 16;
+	
+	// Number of blocks sampled by the first round at least
+	static final int FIRST_BLOCKS = 16;
+	
+	// The sample stops growing at this many bytes, confident or not
+	static final long MAX_SAMPLE_BYTES = 64L << 20;
+	
+	// Confidence needed to stop sampling, see Result.getConfidence()
+	static final float TARGET_CONFIDENCE = 0.999f;
+	
+	// Key lengths tried, the same as Friedman's test
+	private static final int MIN_KEY_LENGTH = Friedman.MIN_KEY_LENGTH;
+	private static final int MAX_KEY_LENGTH = Friedman.MAX_KEY_LENGTH;
+	
+	private final Profile m_profile;
+	private final float m_fTargetConfidence;
+	
+	/**
+	 * Letters of a block counted into a matrix of [length][coset][letter] for every key length,
+	 * cosets starting at the first letter of the block
+	 */
+	private static class Block
+	{
+		private final long m_lPosition;
+		private final int[] m_iCounts;
+		
+		private Block(long position, int[] counts)
+		{
+			m_lPosition = position;
+			m_iCounts = counts;
+		}
+	}
+	
+	/**
+	 * Outcome of sampling a file
+	 */
+	static class Result
+	{
+		private final String m_strKey;
+		private final int m_iKeyLength;
+		private final float m_fConfidence;
+		private final long m_lSampledBytes;
+		private final long m_lFileBytes;
+		
+		private Result(String key, int keyLength, float confidence, long sampledBytes, long fileBytes)
+		{
+			m_strKey = key;
+			m_iKeyLength = keyLength;
+			m_fConfidence = confidence;
+			m_lSampledBytes = sampledBytes;
+			m_lFileBytes = fileBytes;
+		}
+		
+		/**
+		 * @return	The key found, without repeats
+		 */
+		String getKey()
+		{
+			return m_strKey;
+		}
+		
+		/**
+		 * @return	The key length estimated, might be a multiple of the length of the key
+		 */
+		int getKeyLength()
+		{
+			return m_iKeyLength;
+		}
+		
+		/**
+		 * @return	Chance of the weakest letter of the key being right rather than its runner-up,
+		 * 			0 if the key length doesn't lead by KeyLengthEstimator.MIN_CONFIDENCE yet
+		 */
+		float getConfidence()
+		{
+			return m_fConfidence;
+		}
+		
+		/**
+		 * @return	Number of bytes read
+		 */
+		long getSampledBytes()
+		{
+			return m_lSampledBytes;
+		}
+		
+		/**
+		 * @return	Size of the file in bytes
+		 */
+		long getFileBytes()
+		{
+			return m_lFileBytes;
+		}
+	}
+	
+	/**
+	 * @param profile			Language profile to compare the samples to
+	 * @param targetConfidence	Confidence in the range [0,1] to stop sampling at, see Result.getConfidence()
+	 */
+	CipherSampler(Profile profile, float targetConfidence)
+	{
+		m_profile = profile;
+		m_fTargetConfidence = targetConfidence;
+	}
+	
+	/**
+	 * Stops sampling at TARGET_CONFIDENCE
+	 * 
+	 * @param profile	Language profile to compare the samples to
+	 */
+	CipherSampler(Profile profile)
+	{
+		this(profile, TARGET_CONFIDENCE);
+	}
+	
+	/**
+	 * Samples a cipher file until its key is found with enough confidence
+	 * 
+	 * @param cipherFile	Vigenere cipher in an ASCII compatible charset
+	 * @return				The key found along with how confident it is
+	 * @throws IOException
+	 */
+	Result analyse(File cipherFile) throws IOException
+	{
+		AnalysisListener listener = Metrics.listener();
+		long start = System.nanoTime();
+		
+		try (FileChannel channel = FileChannel.open(cipherFile.toPath(), StandardOpenOption.READ))
+		{
+			long fileBytes = channel.size();
+			if (fileBytes == 0)
+			{
+				throw new IllegalArgumentException("Nothing to sample, " + cipherFile.getName() + " is empty");
+			}
+			
+			// The largest power of two of blocks giving at least FIRST_BLOCKS of them
+			long stride = BLOCK_SIZE;
+			while (fileBytes / (2 * stride) >= FIRST_BLOCKS)
+			{
+				stride *= 2;
+			}
+			System.out.printf("Sampling %s every %d KB...\n", cipherFile.getName(), stride >> 10);
+			
+			List<Block> blocks = new ArrayList<Block>();
+			long sampledBytes = sample(channel, 0, stride, blocks);
+			Result result;
+			
+			while (true)
+			{
+				result = estimate(blocks, sampledBytes, fileBytes);
+				
+				System.out.printf("Sampled %d blocks, %d KB: key %s (confidence %.2f)\n", blocks.size(),
+						sampledBytes >> 10, result.getKey(), result.getConfidence());
+				
+				if (result.getConfidence() >= m_fTargetConfidence || stride == BLOCK_SIZE
+						|| sampledBytes >= MAX_SAMPLE_BYTES)
+					break;
+				
+				// Halve the stride, the new blocks go halfway between the old ones
+				stride /= 2;
+				sampledBytes += sample(channel, stride, 2 * stride, blocks);
+			}
+			
+			listener.phaseFinished("sampler.analyse", System.nanoTime() - start);
+			listener.processed("sampler.bytes", sampledBytes, System.nanoTime() - start);
+			return result;
+		}
+	}
+	
+	/**
+	 * Reads and counts blocks at a stride, in parallel, one task each
+	 * 
+	 * @param channel	File to read
+	 * @param first		Position of the first block
+	 * @param stride	Distance between the blocks
+	 * @param blocks	List to add the blocks to
+	 * @return			Number of bytes read
+	 */
+	private static long sample(FileChannel channel, long first, long stride, List<Block> blocks) throws IOException
+	{
+		long fileBytes = channel.size();
+		if (first >= fileBytes)
+			return 0;
+		int count = (int) ((fileBytes - first + stride - 1) / stride);
+		
+		Block[] sampled = new Block[count];
+		IOException[] failure = new IOException[1];
+		
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[count];
+		for (int b = 0; b < count; b++)
+		{
+			int block = b;
+			tasks[b] = ForkJoinTask.adapt(() -> {
+				try
+				{
+					sampled[block] = read(channel, first + block * stride);
+				}
+				catch (IOException e)
+				{
+					failure[0] = e;
+				}
+			});
+		}
+		ForkJoinTask.invokeAll(tasks);
+		
+		if (failure[0] != null)
+		{
+			throw failure[0];
+		}
+		
+		long bytes = 0;
+		for (Block block : sampled)
+		{
+			blocks.add(block);
+			bytes += Math.min(BLOCK_SIZE, fileBytes - block.m_lPosition);
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Reads a block and counts its letters into a coset matrix for every key length,
+	 * laid out like Friedman.getAverageIoC()'s
+	 */
+	private static Block read(FileChannel channel, long position) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+		while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) != -1)
+		{
+			// Keep reading until the block is full or the file ends
+		}
+		buffer.flip();
+		
+		int[] counts = new int[getOffset(MAX_KEY_LENGTH + 1)];
+		int[] cosets = new int[MAX_KEY_LENGTH + 1];
+		
+		byte[] bytes = buffer.array();
+		for (int i = 0; i < buffer.limit(); i++)
+		{
+			// Setting bit 5 lowercases ASCII capitals
+			int letter = (bytes[i] | 0x20) - 'a';
+			if (letter < 0 || letter >= Util.ALPHABET_SIZE)
+				continue;
+			
+			for (int len = MIN_KEY_LENGTH; len <= MAX_KEY_LENGTH; len++)
+			{
+				counts[getOffset(len) + cosets[len] * Util.ALPHABET_SIZE + letter]++;
+				
+				if (++cosets[len] == len)
+				{
+					cosets[len] = 0;
+				}
+			}
+		}
+		return new Block(position, counts);
+	}
+	
+	/**
+	 * Estimates the key length and the key from the blocks sampled so far
+	 */
+	private Result estimate(List<Block> blocks, long sampledBytes, long fileBytes)
+	{
+		// Key length, same as Friedman's test but averaged over the blocks
+		TopK ranking = new TopK(MAX_KEY_LENGTH - MIN_KEY_LENGTH + 1);
+		for (int len = MIN_KEY_LENGTH; len <= MAX_KEY_LENGTH; len++)
+		{
+			double indexOfCoincidence = 0.0;
+			for (Block block : blocks)
+			{
+				indexOfCoincidence += getAverageIoC(block, len);
+			}
+			ranking.offer(len, (float) -Math.abs(indexOfCoincidence / blocks.size() - m_profile.getIndexOfCoincidence()));
+		}
+		
+		TopK votes = new TopK(1);
+		float lengthConfidence = KeyLengthEstimator.vote(new TopK[] { ranking }, votes);
+		int keyLength = votes.getId(0);
+		
+		// Key, the letters of each coset of all the blocks aligned
+		long[][] cosets = align(blocks, keyLength);
+		for (int coset = 0; coset < keyLength; coset++)
+		{
+			if (Arrays.stream(cosets[coset]).sum() == 0)
+			{
+				throw new IllegalArgumentException("Too few letters sampled to find a key");
+			}
+		}
+		
+		int[] shifts = new int[keyLength];
+		float keyConfidence = 1.0f;
+		
+		for (int coset = 0; coset < keyLength; coset++)
+		{
+			int[] letterCounts = new int[Util.ALPHABET_SIZE];
+			for (int l = 0; l < Util.ALPHABET_SIZE; l++)
+			{
+				letterCounts[l] = Math.toIntExact(cosets[coset][l]);
+			}
+			
+			TopK best = Caesar.rankShifts(m_profile.getSample(), new Text(letterCounts), 2);
+			shifts[coset] = best.getId(0);
+			
+			keyConfidence = Math.min(keyConfidence, getConfidence(letterCounts, best.getId(0), best.getId(1)));
+		}
+		
+		// A key length not standing out yet makes the whole key a guess
+		float confidence = lengthConfidence >= KeyLengthEstimator.MIN_CONFIDENCE ? keyConfidence : 0.0f;
+		return new Result(KeySearch.toKey(shifts), keyLength, confidence, sampledBytes, fileBytes);
+	}
+	
+	/**
+	 * Weighs up two shift values of a coset by how likely the letters they decrypt it to are in English.
+	 * Unlike the deviation, the odds grow with the number of letters, so more samples mean more confidence.
+	 * 
+	 * @param letterCounts	Letter counts of the coset
+	 * @param shift			Shift value found
+	 * @param runnerUp		Next best shift value
+	 * @return				Chance of the shift value found being the right one rather than the runner-up
+	 */
+	private float getConfidence(int[] letterCounts, int shift, int runnerUp)
+	{
+		Text sample = m_profile.getSample();
+		
+		// Log-likelihood of the letters decrypted with the shift value found over those with the runner-up
+		double logOdds = 0.0;
+		for (int l = 0; l < Util.ALPHABET_SIZE; l++)
+		{
+			// Add one to every count, so a letter missing from the sample isn't impossible
+			double found = sample.getLetterCount((l - shift + Util.ALPHABET_SIZE) % Util.ALPHABET_SIZE) + 1;
+			double other = sample.getLetterCount((l - runnerUp + Util.ALPHABET_SIZE) % Util.ALPHABET_SIZE) + 1;
+			logOdds += letterCounts[l] * Math.log(found / other);
+		}
+		return (float) (1.0 / (1.0 + Math.exp(-logOdds)));
+	}
+	
+	/**
+	 * Rotates the cosets of every block to match those of the blocks before it and adds them up.
+	 * Blocks go in the order they were sampled, the very first one starting the file.
+	 * 
+	 * @param blocks	Blocks sampled so far
+	 * @param keyLength	Key length to align the cosets at
+	 * @return			Letter counts of each coset, [coset][letter]
+	 */
+	private static long[][] align(List<Block> blocks, int keyLength)
+	{
+		long[][] cosets = new long[keyLength][Util.ALPHABET_SIZE];
+		long[] totals = new long[keyLength];
+		int from = getOffset(keyLength);
+		
+		for (Block block : blocks)
+		{
+			int[] counts = block.m_iCounts;
+			
+			// Mutual index of coincidence of the cosets so far and those of the block, at every rotation
+			int bestRotation = 0;
+			double bestCoincidence = -1.0;
+			for (int rotation = 0; rotation < keyLength; rotation++)
+			{
+				double coincidence = 0.0;
+				for (int coset = 0; coset < keyLength; coset++)
+				{
+					int aligned = (coset + rotation) % keyLength;
+					if (totals[aligned] == 0)
+						continue;
+					
+					for (int l = 0; l < Util.ALPHABET_SIZE; l++)
+					{
+						coincidence += (double) cosets[aligned][l] / totals[aligned]
+								* counts[from + coset * Util.ALPHABET_SIZE + l];
+					}
+				}
+				
+				if (coincidence > bestCoincidence)
+				{
+					bestCoincidence = coincidence;
+					bestRotation = rotation;
+				}
+			}
+			
+			for (int coset = 0; coset < keyLength; coset++)
+			{
+				int aligned = (coset + bestRotation) % keyLength;
+				for (int l = 0; l < Util.ALPHABET_SIZE; l++)
+				{
+					cosets[aligned][l] += counts[from + coset * Util.ALPHABET_SIZE + l];
+					totals[aligned] += counts[from + coset * Util.ALPHABET_SIZE + l];
+				}
+			}
+		}
+		return cosets;
+	}
+	
+	/**
+	 * @return	Average index of coincidence of the cosets of a block, same as Friedman's
+	 */
+	private static double getAverageIoC(Block block, int keyLength)
+	{
+		double indexOfCoincidence = 0.0;
+		
+		for (int coset = 0; coset < keyLength; coset++)
+		{
+			int from = getOffset(keyLength) + coset * Util.ALPHABET_SIZE;
+			
+			long total = 0;
+			long sumOfSquares = 0;
+			for (int l = from; l < from + Util.ALPHABET_SIZE; l++)
+			{
+				total += block.m_iCounts[l];
+				sumOfSquares += (long) block.m_iCounts[l] * block.m_iCounts[l];
+			}
+			
+			if (total > 0)
+			{
+				indexOfCoincidence += (double) sumOfSquares / ((double) total * total);
+			}
+		}
+		return indexOfCoincidence / keyLength;
+	}
+	
+	/**
+	 * @return	Index of the count matrix of a key length, the matrices of all lengths sharing one array
+	 */
+	private static int getOffset(int keyLength)
+	{
+		// Sum of the lengths [MIN_KEY_LENGTH,keyLength) times the alphabet
+		return ((keyLength - 1) * keyLength - (MIN_KEY_LENGTH - 1) * MIN_KEY_LENGTH) / 2 * Util.ALPHABET_SIZE;
+	}
+}
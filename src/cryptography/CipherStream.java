@@ -0,0 +1,625 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import cryptography.Util;
+
+/**
+ * A block based streaming engine used to push whole files through a cipher engine.
+ * Reads and writes through file channels using large reusable buffers, instead
+ * of going through the file one char at a time.
+ *
+ * @author Hristo Hristov
+ */
+class CipherStream
+{
+	// Number of bytes read from the file per block
+	static final int BLOCK_SIZE = 1 << 18;
+	
+	// Number of bytes mapped into memory at once
+	static final int MAP_SIZE = 1 << 28;
+	
+	// Number of bytes handled by a single task in parallel mode
+	static final int CHUNK_SIZE = 1 << 24;
+	
+	// Size of the direct buffer used to stream between channels
+	static final int STREAM_BLOCK_SIZE = 1 << 22;
+	
+	enum Mode
+	{
+		Buffered,
+		Mapped,
+		Parallel
+	}
+	
+	/**
+	 * Shifts every letter of a text file using the given mode
+	 * 
+	 * @param inputFile		File to read from
+	 * @param outputFile	File to store the shifted version at
+	 * @param engine		Cipher to transform the letters with
+	 * @param mode			Buffered to decode chars, Mapped or Parallel for plain ASCII files
+	 * @throws IOException
+	 */
+	static void transform(File inputFile, File outputFile, CipherEngine engine, Mode mode) throws IOException
+	{
+		transform(inputFile, outputFile, engine, mode, null);
+	}
+	
+	/**
+	 * Shifts every letter of a text file using the given mode, indexing the letters of the output
+	 * 
+	 * @param inputFile		File to read from
+	 * @param outputFile	File to store the shifted version at
+	 * @param engine		Cipher to transform the letters with
+	 * @param mode			Buffered to decode chars, Mapped or Parallel for plain ASCII files
+	 * @param index			Fed with the output file, null for no index
+	 * @throws IOException
+	 */
+	static void transform(File inputFile, File outputFile, CipherEngine engine, Mode mode,
+			LetterIndex.Builder index) throws IOException
+	{
+		switch (mode)
+		{
+		case Buffered:
+			transform(inputFile, outputFile, engine, index);
+			break;
+		
+		case Mapped:
+			transformMapped(inputFile, outputFile, engine, index);
+			break;
+		
+		case Parallel:
+			transformParallel(inputFile, outputFile, engine, index);
+			break;
+		}
+	}
+	
+	/**
+	 * Shifts every letter of a text file using a repeating set of shift values.
+	 * Decodes and encodes using the platform's default charset, the same way
+	 * FileReader and FileWriter do, so the output matches char by char.
+	 * As long as the input is plain ASCII and the charset encodes ASCII as itself,
+	 * e.g. UTF-8 or ISO-8859-1, the bytes are transformed as they are without
+	 * decoding. The first non-ASCII byte switches over to the charsets for good.
+	 * 
+	 * @param inputFile		File to read from
+	 * @param outputFile	File to store the shifted version at
+	 * @param engine		Cipher to transform the letters with
+	 * @throws IOException
+	 */
+	static void transform(File inputFile, File outputFile, CipherEngine engine) throws IOException
+	{
+		transform(inputFile, outputFile, engine, (LetterIndex.Builder) null);
+	}
+	
+	/**
+	 * Shifts every letter of a text file the same way as transform(File, File, CipherEngine),
+	 * feeding every block written out to a letter index on its way
+	 * 
+	 * @param inputFile		File to read from
+	 * @param outputFile	File to store the shifted version at
+	 * @param engine		Cipher to transform the letters with
+	 * @param index			Fed with the output file, null for no index
+	 * @throws IOException
+	 */
+	static void transform(File inputFile, File outputFile, CipherEngine engine, LetterIndex.Builder index)
+			throws IOException
+	{
+		Charset charset = Charset.defaultCharset();
+		
+		// Replace malformed input just like FileReader/FileWriter would
+		CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharsetEncoder encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		
+		try (FileChannel reader = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+			 FileChannel writer = FileChannel.open(outputFile.toPath(), StandardOpenOption.WRITE,
+					 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			ByteBuffer inBlock = ByteBuffer.allocateDirect(BLOCK_SIZE);
+			ByteBuffer outBlock = ByteBuffer.allocateDirect(
+					(int) Math.ceil(BLOCK_SIZE * encoder.maxBytesPerChar()));
+			CharBuffer chars = CharBuffer.allocate(BLOCK_SIZE);
+			
+			// Position within the key, carried over from block to block
+			long keyPos = 0;
+			boolean ascii = isAsciiCompatible(charset);
+			
+			boolean endOfInput = false;
+			while (!endOfInput)
+			{
+				endOfInput = reader.read(inBlock) == -1;
+				inBlock.flip();
+				
+				if (ascii)
+				{
+					// Transform the ASCII bytes in place and write them straight out
+					int asciiEnd = ShiftKernel.asciiLength(inBlock);
+					ByteBuffer run = inBlock.slice(0, asciiEnd);
+					keyPos = engine.transform(run, run, keyPos);
+					run.position(asciiEnd);
+					drain(run, writer, index);
+					
+					inBlock.position(asciiEnd);
+					ascii = asciiEnd == inBlock.limit();
+				}
+				
+				// Decode as much of the block as possible
+				CoderResult result;
+				do
+				{
+					int shifted = chars.position();
+					result = decoder.decode(inBlock, chars, endOfInput);
+					keyPos = shiftAndEncode(chars, shifted, engine, keyPos, encoder, outBlock, writer, index);
+				}
+				while (result.isOverflow());
+				inBlock.compact();
+			}
+			
+			// Let the decoder hand over anything it held back
+			CoderResult result;
+			do
+			{
+				int shifted = chars.position();
+				result = decoder.flush(chars);
+				keyPos = shiftAndEncode(chars, shifted, engine, keyPos, encoder, outBlock, writer, index);
+			}
+			while (result.isOverflow());
+			
+			// Encode whatever the encoder might have held back
+			chars.flip();
+			encode(encoder, chars, outBlock, writer, index, true);
+			while (encoder.flush(outBlock).isOverflow())
+			{
+				drain(outBlock, writer, index);
+			}
+			drain(outBlock, writer, index);
+		}
+	}
+	
+	/**
+	 * Shifts every letter of an ASCII text file by mapping both files into memory.
+	 * Bytes are transformed straight from one mapping into the other, so hardly
+	 * any heap is used no matter how big the file is. Only ASCII letters are
+	 * shifted, any other byte is copied over as it is.
+	 * 
+	 * @param inputFile		File to read from
+	 * @param outputFile	File to store the shifted version at
+	 * @param engine		Cipher to transform the letters with
+	 * @throws IOException
+	 */
+	static void transformMapped(File inputFile, File outputFile, CipherEngine engine) throws IOException
+	{
+		transformMapped(inputFile, outputFile, engine, null);
+	}
+	
+	/**
+	 * Shifts every letter of an ASCII text file the same way as transformMapped(File, File, CipherEngine),
+	 * feeding every mapping of the output to a letter index once it's transformed
+	 * 
+	 * @param inputFile		File to read from
+	 * @param outputFile	File to store the shifted version at
+	 * @param engine		Cipher to transform the letters with
+	 * @param index			Fed with the output file, null for no index
+	 * @throws IOException
+	 */
+	static void transformMapped(File inputFile, File outputFile, CipherEngine engine, LetterIndex.Builder index)
+			throws IOException
+	{
+		try (FileChannel reader = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+			 FileChannel writer = FileChannel.open(outputFile.toPath(), StandardOpenOption.READ,
+					 StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			long size = reader.size();
+			long keyPos = 0;
+			
+			// Files larger than 2 GB can't be mapped at once
+			for (long offset = 0; offset < size; offset += MAP_SIZE)
+			{
+				long length = Math.min(MAP_SIZE, size - offset);
+				
+				MappedByteBuffer source = reader.map(MapMode.READ_ONLY, offset, length);
+				MappedByteBuffer target = writer.map(MapMode.READ_WRITE, offset, length);
+				keyPos = engine.transform(source, target, keyPos);
+				
+				if (index != null)
+				{
+					index.append(target.clear());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Shifts every letter of an ASCII text file, overwriting the file itself.
+	 * The file is mapped into memory and transformed in place.
+	 * 
+	 * @param file		File to overwrite
+	 * @param engine	Cipher to transform the letters with
+	 * @throws IOException
+	 */
+	static void transformInPlace(File file, CipherEngine engine) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+				StandardOpenOption.WRITE))
+		{
+			long size = channel.size();
+			long keyPos = 0;
+			
+			for (long offset = 0; offset < size; offset += MAP_SIZE)
+			{
+				long length = Math.min(MAP_SIZE, size - offset);
+				
+				MappedByteBuffer region = channel.map(MapMode.READ_WRITE, offset, length);
+				keyPos = engine.transform(region, region, keyPos);
+			}
+		}
+	}
+	
+	/**
+	 * Shifts every ASCII letter flowing from one channel to another, e.g. from stdin
+	 * to stdout. Blocks go through a single direct buffer and are shifted in place,
+	 * so there's no copying to and from the heap and the input may be of any size.
+	 * 
+	 * @param reader	Channel to read from until it ends
+	 * @param writer	Channel to write the shifted bytes to
+	 * @param engine	Cipher to transform the letters with
+	 * @return			Number of bytes transformed
+	 * @throws IOException
+	 */
+	static long transform(ReadableByteChannel reader, WritableByteChannel writer, CipherEngine engine) throws IOException
+	{
+		ByteBuffer block = ByteBuffer.allocateDirect(STREAM_BLOCK_SIZE);
+		long keyPos = 0;
+		long total = 0;
+		
+		boolean endOfInput = false;
+		while (!endOfInput)
+		{
+			// Fill the whole block, pipes hand data over in much smaller pieces
+			block.clear();
+			while (block.hasRemaining())
+			{
+				if (reader.read(block) == -1)
+				{
+					endOfInput = true;
+					break;
+				}
+			}
+			block.flip();
+			
+			keyPos = engine.transform(block, block, keyPos);
+			total += block.remaining();
+			
+			while (block.hasRemaining())
+			{
+				writer.write(block);
+			}
+		}
+		return total;
+	}
+	
+	/**
+	 * Shifts every letter of an ASCII text file using all available cores.
+	 * The key only moves on letters, so the file is split into chunks and the letters
+	 * of each chunk are counted in parallel first. A prefix sum over those counts
+	 * gives every chunk its starting key position, after which the chunks are
+	 * transformed concurrently. The output is the same as the one of transformMapped().
+	 * Engines whose key stream never repeats can't start mid-stream, so they go through
+	 * transformMapped() instead.
+	 * 
+	 * @param inputFile		File to read from
+	 * @param outputFile	File to store the shifted version at
+	 * @param engine		Cipher to transform the letters with
+	 * @throws IOException
+	 */
+	static void transformParallel(File inputFile, File outputFile, CipherEngine engine) throws IOException
+	{
+		transformParallel(inputFile, outputFile, engine, null);
+	}
+	
+	/**
+	 * Shifts every letter of an ASCII text file the same way as transformParallel(File, File, CipherEngine).
+	 * The chunks finish in any order, while a letter index has to be fed in order, so the output
+	 * gets indexed in a pass of its own once every chunk is transformed.
+	 * 
+	 * @param inputFile		File to read from
+	 * @param outputFile	File to store the shifted version at
+	 * @param engine		Cipher to transform the letters with
+	 * @param index			Fed with the output file, null for no index
+	 * @throws IOException
+	 */
+	static void transformParallel(File inputFile, File outputFile, CipherEngine engine, LetterIndex.Builder index)
+			throws IOException
+	{
+		if (engine.getPeriod() == 0)
+		{
+			transformMapped(inputFile, outputFile, engine, index);
+			return;
+		}
+		
+		try (FileChannel reader = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+			 FileChannel writer = FileChannel.open(outputFile.toPath(), StandardOpenOption.READ,
+					 StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			long size = reader.size();
+			if (size == 0)
+			{
+				return;
+			}
+			
+			// Grow the output up front, so the chunks can be mapped concurrently
+			writer.write(ByteBuffer.allocate(1), size - 1);
+			
+			int numOfChunks = (int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+			long[] letters = new long[numOfChunks];
+			long[] keyPositions = new long[numOfChunks];
+			
+			try
+			{
+				// Count the letters of each chunk
+				ForkJoinPool.commonPool().invoke(
+						new ChunkTask(reader, null, engine, letters, null, 0, numOfChunks));
+				
+				// Work out where in the key each chunk starts
+				long total = 0;
+				for (int i = 0; i < numOfChunks; i++)
+				{
+					keyPositions[i] = total % engine.getPeriod();
+					total += letters[i];
+				}
+				
+				// Transform all chunks at once
+				ForkJoinPool.commonPool().invoke(
+						new ChunkTask(reader, writer, engine, null, keyPositions, 0, numOfChunks));
+			}
+			catch (UncheckedIOException e)
+			{
+				throw e.getCause();
+			}
+			
+			for (long offset = 0; index != null && offset < size; offset += MAP_SIZE)
+			{
+				index.append(writer.map(MapMode.READ_ONLY, offset, Math.min(MAP_SIZE, size - offset)));
+			}
+		}
+	}
+	
+	/**
+	 * Shifts the letters of a range of a text file only, as if the whole file was shifted.
+	 * The position within the key is worked out from the letters before the last checkpoint
+	 * of the index at or before the range, plus the letters between the checkpoint and the range,
+	 * so no more than an interval of the index is read besides the range itself, however big
+	 * the file is. Only ASCII letters are shifted, the same as transformMapped() does.
+	 * 
+	 * @param inputFile		File to read from, e.g. a cipher
+	 * @param index			Letter index of the file
+	 * @param engine		Cipher to transform the letters with, its key stream has to repeat
+	 * @param from			First byte of the range
+	 * @param to			Byte after the last one of the range, at most 2 GB after the first
+	 * @return				The shifted range, from its position up to its limit
+	 * @throws IOException	If the file can't be read or the index is out of date
+	 */
+	static ByteBuffer transformRange(File inputFile, LetterIndex index, CipherEngine engine, long from, long to)
+			throws IOException
+	{
+		if (engine.getPeriod() == 0)
+		{
+			throw new IllegalArgumentException("A key stream that never repeats can't start in the middle of a file");
+		}
+		if (from > to || to - from > Integer.MAX_VALUE - index.getInterval())
+		{
+			throw new IllegalArgumentException(String.format("Invalid range [%d,%d)", from, to));
+		}
+		
+		try (FileChannel reader = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ))
+		{
+			if (reader.size() != index.getFileBytes())
+			{
+				throw new IOException(String.format("The letter index of %s is out of date, it's of %d bytes instead of %d",
+						inputFile.getPath(), index.getFileBytes(), reader.size()));
+			}
+			
+			// Both ends are checked against the size of the file
+			int checkpoint = index.getCheckpoint(from);
+			index.getCheckpoint(to);
+			long start = (long) checkpoint * index.getInterval();
+			
+			ByteBuffer block = ByteBuffer.allocate((int) (to - start));
+			while (block.hasRemaining())
+			{
+				if (reader.read(block, start + block.position()) == -1)
+				{
+					throw new IOException("Unexpected end of " + inputFile.getPath());
+				}
+			}
+			
+			int skipped = (int) (from - start);
+			long keyPos = (index.getLetters(checkpoint) + ShiftKernel.countLetters(block.slice(0, skipped)))
+					% engine.getPeriod();
+			
+			ByteBuffer range = block.slice(skipped, (int) (to - from));
+			engine.transform(range, range, keyPos);
+			return range.clear();
+		}
+	}
+	
+	/**
+	 * Fork-join task going over a range of file chunks. Without a target channel it
+	 * counts the letters of each chunk, otherwise it transforms each chunk starting
+	 * at the chunk's key position.
+	 */
+	private static class ChunkTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final FileChannel m_source;
+		private final FileChannel m_target;
+		private final CipherEngine m_engine;
+		private final long[] m_letters;
+		private final long[] m_keyPositions;
+		private final int m_from;
+		private final int m_to;
+		
+		ChunkTask(FileChannel source, FileChannel target, CipherEngine engine, long[] letters,
+				long[] keyPositions, int from, int to)
+		{
+			m_source = source;
+			m_target = target;
+			m_engine = engine;
+			m_letters = letters;
+			m_keyPositions = keyPositions;
+			m_from = from;
+			m_to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			// Split until there's a single chunk left
+			if (m_to - m_from > 1)
+			{
+				int middle = (m_from + m_to) >>> 1;
+				invokeAll(new ChunkTask(m_source, m_target, m_engine, m_letters, m_keyPositions, m_from, middle),
+						  new ChunkTask(m_source, m_target, m_engine, m_letters, m_keyPositions, middle, m_to));
+				return;
+			}
+			
+			try
+			{
+				long offset = (long) m_from * CHUNK_SIZE;
+				long length = Math.min(CHUNK_SIZE, m_source.size() - offset);
+				MappedByteBuffer source = m_source.map(MapMode.READ_ONLY, offset, length);
+				
+				if (m_target == null)
+				{
+					m_letters[m_from] = ShiftKernel.countLetters(source);
+				}
+				else
+				{
+					MappedByteBuffer target = m_target.map(MapMode.READ_WRITE, offset, length);
+					m_engine.transform(source, target, m_keyPositions[m_from]);
+				}
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Brings shift values into the range [0,25] so they can be applied with a single
+	 * wrap around. Inverse shifts are used to decrypt.
+	 * 
+	 * @param shifts	Shift values as returned by Vigenere.breakDownKey()
+	 * @param inverse	If true, the shifts are reversed
+	 * @return			Normalized shift values
+	 */
+	static int[] normalizeShifts(int[] shifts, boolean inverse)
+	{
+		int[] normalized = new int[shifts.length];
+		
+		for (int i = 0; i < shifts.length; i++)
+		{
+			int shift = inverse ? -shifts[i] : shifts[i];
+			normalized[i] = Math.floorMod(shift, Util.ALPHABET_SIZE);
+		}
+		return normalized;
+	}
+	
+	/**
+	 * @param charset	Charset to check
+	 * @return			True if every ASCII char is encoded as the very same single byte
+	 */
+	static boolean isAsciiCompatible(Charset charset)
+	{
+		byte[] ascii = new byte[0x80];
+		for (int b = 0; b < ascii.length; b++)
+		{
+			ascii[b] = (byte) b;
+		}
+		
+		String decoded = new String(ascii, charset);
+		if (decoded.length() != ascii.length)
+			return false;
+		
+		for (int b = 0; b < ascii.length; b++)
+		{
+			if (decoded.charAt(b) != b)
+				return false;
+		}
+		return Arrays.equals(decoded.getBytes(charset), ascii);
+	}
+	
+	/**
+	 * Transforms the freshly decoded chars of a block and encodes the block. Chars the
+	 * encoder couldn't consume yet are left at the start of the char block.
+	 * 
+	 * @return	Position within the key after the block
+	 */
+	private static long shiftAndEncode(CharBuffer chars, int shifted, CipherEngine engine, long keyPos,
+			CharsetEncoder encoder, ByteBuffer outBlock, FileChannel writer, LetterIndex.Builder index) throws IOException
+	{
+		chars.flip();
+		keyPos = engine.transform(chars.array(), shifted, chars.limit(), keyPos);
+		encode(encoder, chars, outBlock, writer, index, false);
+		chars.compact();
+		return keyPos;
+	}
+	
+	/**
+	 * Encodes a block of chars, writing to the channel whenever the byte block fills up
+	 */
+	private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer outBlock,
+			FileChannel writer, LetterIndex.Builder index, boolean endOfInput) throws IOException
+	{
+		while (encoder.encode(chars, outBlock, endOfInput).isOverflow())
+		{
+			drain(outBlock, writer, index);
+		}
+		drain(outBlock, writer, index);
+	}
+	
+	/**
+	 * Writes out everything in a byte block and clears it, indexing it first unless the index is null
+	 */
+	private static void drain(ByteBuffer block, FileChannel writer, LetterIndex.Builder index) throws IOException
+	{
+		block.flip();
+		if (index != null)
+		{
+			index.append(block);
+		}
+		while (block.hasRemaining())
+		{
+			writer.write(block);
+		}
+		block.clear();
+	}
+}
@@ -0,0 +1,274 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line interface made to sit in a shell pipeline. Text comes in through
+ * stdin and goes out through stdout, anything printed along the way goes to stderr.
+ *
+ * @author Hristo Hristov
+ */
+class Cli
+{
+	private static final String USAGE =
+			"Usage: encrypt (-k KEY | -f KEY_FILE) [-c CIPHER] [-u]\n" +
+			"                                              Encrypt stdin to stdout\n" +
+			"       decrypt (-k KEY | -f KEY_FILE) [-c CIPHER] [-u]\n" +
+			"                                              Decrypt stdin to stdout\n" +
+			"       crack (-p PROFILE | -s SAMPLE [-p PROFILE]) [-w WORDLIST] [-d] [-u]\n" +
+			"                                              Find the key of the cipher on stdin and print it,\n" +
+			"                                              or print the decrypted cipher with -d\n" +
+			"Options: -c  Vigenere (default), Beaufort, VariantBeaufort or Autokey\n" +
+			"         -u  Keep capitals as capitals, otherwise every letter is lowercased\n" +
+			"         -q  Print nothing but the output\n";
+	
+	// Options followed by a value
+	private static final String[] VALUE_OPTIONS = { "-k", "-f", "-c", "-p", "-s", "-w" };
+	
+	// Options on their own
+	private static final String[] FLAG_OPTIONS = { "-d", "-u", "-q" };
+	
+	/**
+	 * Main entry point
+	 * @param args	Command followed by its options
+	 */
+	public static void main(String[] args)
+	{
+		// Keep stdout for the output, whatever the analysers print goes to stderr
+		WritableByteChannel stdout = new FileOutputStream(FileDescriptor.out).getChannel();
+		ReadableByteChannel stdin = new FileInputStream(FileDescriptor.in).getChannel();
+		System.setOut(System.err);
+		
+		try
+		{
+			run(args, stdin, stdout);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.print(USAGE);
+			System.exit(2);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Runs a command
+	 * 
+	 * @param args	Command followed by its options
+	 * @param in	Channel to read the input from
+	 * @param out	Channel to write the output to
+	 * @throws IOException
+	 */
+	static void run(String[] args, ReadableByteChannel in, WritableByteChannel out) throws IOException
+	{
+		if (args.length == 0)
+		{
+			throw new IllegalArgumentException("No command given");
+		}
+		
+		Map<String, String> options = parseOptions(args);
+		if (options.containsKey("-q"))
+		{
+			System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		}
+		
+		switch (args[0])
+		{
+			case "encrypt":
+				CipherStream.transform(in, out, CipherEngine.create(getCipher(options), getKey(options), false, options.containsKey("-u")));
+				break;
+			case "decrypt":
+				CipherStream.transform(in, out, CipherEngine.create(getCipher(options), getKey(options), true, options.containsKey("-u")));
+				break;
+			case "crack":
+				crack(options, in, out);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown command: " + args[0]);
+		}
+	}
+	
+	/**
+	 * Finds the key of a cipher, then prints either the key or the decrypted cipher.
+	 * The whole cipher is kept in memory, since it's read twice.
+	 */
+	private static void crack(Map<String, String> options, ReadableByteChannel in, WritableByteChannel out)
+			throws IOException
+	{
+		byte[] bytes = Channels.newInputStream(in).readAllBytes();
+		
+		// Pick the ASCII letters out, lowercased
+		LetterBuffer cipher = new LetterBuffer(bytes.length);
+		for (byte b : bytes)
+		{
+			int letter = (b | 0x20) - 'a';
+			if (letter >= 0 && letter < Util.ALPHABET_SIZE)
+			{
+				cipher.append('a' + letter);
+			}
+		}
+		if (cipher.length() == 0)
+		{
+			throw new IllegalArgumentException("No letters to crack on stdin");
+		}
+		
+		Profile profile = getProfile(options);
+		String key = null;
+		
+		if (options.containsKey("-w"))
+		{
+			Dictionary dictionary = new Dictionary(new File(options.get("-w")));
+			key = new DictionaryAttack(profile, dictionary).attack(cipher);
+		}
+		if (key == null)
+		{
+			key = new BatchCracker(profile, 1).findKey(cipher);
+		}
+		System.out.println("The key is: " + key);
+		
+		ByteBuffer output;
+		if (options.containsKey("-d"))
+		{
+			output = ByteBuffer.wrap(bytes);
+			CipherEngine.create(CipherEngine.Type.Vigenere, key, true, options.containsKey("-u")).transform(output, output, 0);
+		}
+		else
+		{
+			output = ByteBuffer.wrap((key + System.lineSeparator()).getBytes(StandardCharsets.US_ASCII));
+		}
+		
+		while (output.hasRemaining())
+		{
+			out.write(output);
+		}
+	}
+	
+	/**
+	 * @return	The key given on the command line or in a file, lowercased
+	 */
+	private static String getKey(Map<String, String> options) throws IOException
+	{
+		String key;
+		
+		if (options.containsKey("-k"))
+		{
+			key = options.get("-k");
+		}
+		else if (options.containsKey("-f"))
+		{
+			key = new String(Files.readAllBytes(new File(options.get("-f")).toPath()), StandardCharsets.US_ASCII);
+		}
+		else
+		{
+			throw new IllegalArgumentException("No key given");
+		}
+		
+		key = key.trim();
+		if (!key.matches("[a-zA-Z]+"))
+		{
+			throw new IllegalArgumentException("Please enter a valid key! (Only letters allowed)");
+		}
+		return key.toLowerCase();
+	}
+	
+	/**
+	 * @return	The cipher given on the command line, Vigenere by default
+	 */
+	private static CipherEngine.Type getCipher(Map<String, String> options)
+	{
+		String cipher = options.getOrDefault("-c", CipherEngine.Type.Vigenere.name());
+		
+		for (CipherEngine.Type type : CipherEngine.Type.values())
+		{
+			if (type.name().equalsIgnoreCase(cipher))
+				return type;
+		}
+		throw new IllegalArgumentException("Unknown cipher: " + cipher);
+	}
+	
+	/**
+	 * Loads a saved profile, or builds one from a sample and caches it next to the sample,
+	 * or at the profile path if both are given
+	 */
+	private static Profile getProfile(Map<String, String> options) throws IOException
+	{
+		if (!options.containsKey("-p") && !options.containsKey("-s"))
+			throw new IllegalArgumentException("No profile or sample given");
+		
+		if (!options.containsKey("-s"))
+		{
+			return Profile.load(new File(options.get("-p")));
+		}
+		
+		File sample = new File(options.get("-s"));
+		File profile = new File(options.getOrDefault("-p", sample.getPath() + ".profile"));
+		return Profile.loadOrBuild(sample, profile);
+	}
+	
+	/**
+	 * @param args	Command followed by its options
+	 * @return		Options mapped to their values, flags mapped to null
+	 */
+	private static Map<String, String> parseOptions(String[] args)
+	{
+		Map<String, String> options = new HashMap<String, String>();
+		
+		for (int i = 1; i < args.length; i++)
+		{
+			if (!args[i].startsWith("-"))
+			{
+				throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+			}
+			
+			if (contains(VALUE_OPTIONS, args[i]))
+			{
+				if (i + 1 == args.length)
+				{
+					throw new IllegalArgumentException("Missing value of " + args[i]);
+				}
+				options.put(args[i], args[++i]);
+			}
+			else if (contains(FLAG_OPTIONS, args[i]))
+			{
+				options.put(args[i], null);
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		return options;
+	}
+	
+	private static boolean contains(String[] options, String option)
+	{
+		for (String o : options)
+		{
+			if (o.equals(option))
+				return true;
+		}
+		return false;
+	}
+}
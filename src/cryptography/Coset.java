@@ -0,0 +1,72 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.util.Objects;
+
+/**
+ * A view of every n-th char of a text, starting at a given offset.
+ * Used to read a monoalphabetical stream (coset) of a Vigenere cipher
+ * straight out of the cipher, without copying it.
+ *
+ * @author Hristo Hristov
+ */
+class Coset implements CharSequence
+{
+	private final CharSequence m_text;
+	private final int m_iOffset;
+	private final int m_iStride;
+	private final int m_iLength;
+	
+	/**
+	 * @param text		Text to view
+	 * @param offset	Index of the first char of the coset
+	 * @param stride	Distance between two chars of the coset, i.e. the key length
+	 */
+	Coset(CharSequence text, int offset, int stride)
+	{
+		this(text, offset, stride,
+				offset < text.length() ? (text.length() - offset + stride - 1) / stride : 0);
+	}
+	
+	private Coset(CharSequence text, int offset, int stride, int length)
+	{
+		m_text = text;
+		m_iOffset = offset;
+		m_iStride = stride;
+		m_iLength = length;
+	}
+	
+	@Override
+	public int length()
+	{
+		return m_iLength;
+	}
+	
+	@Override
+	public char charAt(int index)
+	{
+		Objects.checkIndex(index, m_iLength);
+		return m_text.charAt(m_iOffset + index * m_iStride);
+	}
+	
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		Objects.checkFromToIndex(start, end, m_iLength);
+		return new Coset(m_text, m_iOffset + start * m_iStride, m_iStride, end - start);
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder(m_iLength);
+		
+		for (int i = 0; i < m_iLength; i++)
+		{
+			builder.append(m_text.charAt(m_iOffset + i * m_iStride));
+		}
+		return builder.toString();
+	}
+}
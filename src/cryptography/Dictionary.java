@@ -0,0 +1,200 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A word list kept as one trie per word length, so every leaf of a trie is
+ * at the same depth and a search for keys of a given length only walks the
+ * words of that length. Nodes live in primitive arrays, children are linked
+ * as first child / next sibling to keep million-word lists small.
+ *
+ * @author Hristo Hristov
+ */
+class Dictionary
+{
+	// Longest word kept
+	static final int MAX_WORD_LENGTH = 64;
+	
+	private final Trie[] m_tries = new Trie[MAX_WORD_LENGTH + 1];
+	private int m_iSize = 0;
+	
+	/**
+	 * A trie of words of the same length, node 0 is the root
+	 */
+	static class Trie
+	{
+		private byte[] m_letters = new byte[16];
+		private int[] m_iFirstChild = new int[16];
+		private int[] m_iNextSibling = new int[16];
+		private int m_iNodes = 1;
+		
+		/**
+		 * @return	The root node
+		 */
+		int getRoot()
+		{
+			return 0;
+		}
+		
+		/**
+		 * @return	The first child of a node or -1 if it's a leaf
+		 */
+		int getFirstChild(int node)
+		{
+			return m_iFirstChild[ node ] - 1;
+		}
+		
+		/**
+		 * @return	The next child of the same parent or -1 if it's the last one
+		 */
+		int getNextSibling(int node)
+		{
+			return m_iNextSibling[ node ] - 1;
+		}
+		
+		/**
+		 * @return	The letter leading to a node in the range [0,25]
+		 */
+		int getLetter(int node)
+		{
+			return m_letters[ node ];
+		}
+		
+		/**
+		 * @return	Number of nodes, the root included
+		 */
+		int getNodeCount()
+		{
+			return m_iNodes;
+		}
+		
+		/**
+		 * Adds a word to the trie
+		 * 
+		 * @param word	Word in the range [a,z]
+		 * @return		False if the word was already there
+		 */
+		private boolean add(CharSequence word)
+		{
+			boolean added = false;
+			int node = 0;
+			
+			for (int i = 0; i < word.length(); i++)
+			{
+				int letter = word.charAt(i) - 'a';
+				
+				// Children are unsorted, lists are at most 26 long
+				int child = getFirstChild(node);
+				while (child != -1 && m_letters[child] != letter)
+				{
+					child = getNextSibling(child);
+				}
+				
+				if (child == -1)
+				{
+					child = newNode(letter);
+					m_iNextSibling[child] = m_iFirstChild[node];
+					m_iFirstChild[node] = child + 1;
+					added = true;
+				}
+				node = child;
+			}
+			return added;
+		}
+		
+		private int newNode(int letter)
+		{
+			if (m_iNodes == m_letters.length)
+			{
+				m_letters = Arrays.copyOf(m_letters, m_iNodes << 1);
+				m_iFirstChild = Arrays.copyOf(m_iFirstChild, m_iNodes << 1);
+				m_iNextSibling = Arrays.copyOf(m_iNextSibling, m_iNodes << 1);
+			}
+			m_letters[m_iNodes] = (byte) letter;
+			return m_iNodes++;
+		}
+	}
+	
+	/**
+	 * Loads a word list, one word per line. Words are lowercased, anything
+	 * that isn't a word of letters only is skipped.
+	 * 
+	 * @param wordList	File to load
+	 */
+	Dictionary(File wordList)
+	{
+		try (BufferedReader reader = new BufferedReader(new FileReader(wordList), CipherStream.BLOCK_SIZE))
+		{
+			System.out.printf("Loading dictionary \"%s\"... ", wordList.getPath());
+			
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				add(line.trim().toLowerCase());
+			}
+			
+			System.out.printf("finished loading %d words.\n", m_iSize);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Creates an empty dictionary
+	 */
+	Dictionary()
+	{
+	}
+	
+	/**
+	 * Adds a word, skipped unless it's made of letters in the range [a,z] only
+	 * 
+	 * @param word	Word to add
+	 */
+	void add(CharSequence word)
+	{
+		if (word.length() == 0 || word.length() > MAX_WORD_LENGTH)
+			return;
+		
+		for (int i = 0; i < word.length(); i++)
+		{
+			if (word.charAt(i) < 'a' || word.charAt(i) > 'z')
+				return;
+		}
+		
+		if (m_tries[word.length()] == null)
+		{
+			m_tries[word.length()] = new Trie();
+		}
+		if (m_tries[word.length()].add(word))
+		{
+			m_iSize++;
+		}
+	}
+	
+	/**
+	 * @return	Number of distinct words
+	 */
+	int size()
+	{
+		return m_iSize;
+	}
+	
+	/**
+	 * @param length	Word length
+	 * @return			The trie of all words of that length or null if there are none
+	 */
+	Trie getTrie(int length)
+	{
+		return length < m_tries.length ? m_tries[ length ] : null;
+	}
+}
@@ -0,0 +1,299 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import cryptography.Util;
+
+/**
+ * Attacks a Vigenere cipher whose key is a dictionary word. Each coset of a prefix of
+ * the cipher is scored for all 26 shifts up front, so a key is scored by a table lookup
+ * per letter. The tries of the dictionary are walked depth first, and a whole subtree is
+ * skipped as soon as its prefix decrypts a coset noticeably worse than the best shift would.
+ *
+ * @author Hristo Hristov
+ */
+class DictionaryAttack
+{
+	// Letters of the cipher the keys are scored on
+	static final int PREFIX_LETTERS = 10000;
+	
+	// How much worse than the best shift of a coset a key letter may score per letter of the coset
+	static final float SCORE_TOLERANCE = 0.1f;
+	
+	// Depth of the tries down to which every node gets a task of its own
+	private static final int FORK_DEPTH = 2;
+	
+	// Natural log of the frequency of each letter in English
+	private final float[] m_fLogFrequencies = new float[Util.ALPHABET_SIZE];
+	private final Profile m_profile;
+	private final Dictionary m_dictionary;
+	
+	/**
+	 * Best scoring word found in a subtree
+	 */
+	private static class Candidate
+	{
+		final byte[] m_letters;
+		final float m_fScore;
+		
+		Candidate(byte[] letters, float score)
+		{
+			m_letters = letters;
+			m_fScore = score;
+		}
+		
+		static Candidate best(Candidate a, Candidate b)
+		{
+			if (a == null)
+				return b;
+			if (b == null)
+				return a;
+			return b.m_fScore > a.m_fScore ? b : a;
+		}
+	}
+	
+	/**
+	 * @param profile		Language profile to score decryptions by
+	 * @param dictionary	Words to try as keys
+	 */
+	DictionaryAttack(Profile profile, Dictionary dictionary)
+	{
+		m_profile = profile;
+		m_dictionary = dictionary;
+		
+		Text sample = profile.getSample();
+		for (int l = 0; l < Util.ALPHABET_SIZE; l++)
+		{
+			// Add one smoothing, a letter missing from the sample mustn't rule a key out for good
+			m_fLogFrequencies[l] = (float) Math.log((sample.getLetterCount(l) + 1.0) 
+					/ (sample.getTotalLetters() + Util.ALPHABET_SIZE));
+		}
+	}
+	
+	/**
+	 * Attacks a cipher with words of the lengths estimated by Kasiski's and Friedman's tests.
+	 * Either test may find a factor of the key length, so multiples are tried as well.
+	 * 
+	 * @param cipher	Cipher text, letters in the range [a,z]
+	 * @return			The best scoring word or null if every word got pruned
+	 */
+	String attack(CharSequence cipher)
+	{
+		int[] estimates = {
+			Kasiski.test(cipher),
+			Friedman.test(cipher, m_profile.getIndexOfCoincidence())
+		};
+		
+		TreeSet<Integer> keyLengths = new TreeSet<Integer>();
+		for (int estimate : estimates)
+		{
+			for (int length = estimate; estimate > 0 && length <= Dictionary.MAX_WORD_LENGTH; length += estimate)
+			{
+				keyLengths.add(length);
+			}
+		}
+		return attack(cipher, keyLengths.stream().mapToInt(Integer::intValue).toArray());
+	}
+	
+	/**
+	 * Attacks a cipher with words of the given lengths
+	 * 
+	 * @param cipher		Cipher text, letters in the range [a,z]
+	 * @param keyLengths	Key lengths to try
+	 * @return				The best scoring word or null if every word got pruned
+	 */
+	String attack(CharSequence cipher, int[] keyLengths)
+	{
+		System.out.printf("Attacking cipher with %d dictionary words... ", m_dictionary.size());
+		
+		CharSequence prefix = cipher.subSequence(0, Math.min(cipher.length(), PREFIX_LETTERS));
+		List<ForkJoinTask<Candidate>> tasks = new ArrayList<ForkJoinTask<Candidate>>();
+		
+		for (int keyLength : keyLengths)
+		{
+			Dictionary.Trie trie = m_dictionary.getTrie(keyLength);
+			if (trie == null || keyLength > prefix.length())
+				continue;
+			
+			float[][] scores = scoreShifts(prefix, keyLength);
+			boolean[][] allowed = allowShifts(scores);
+			tasks.add(new SearchTask(trie, scores, allowed, trie.getRoot(), 0, new byte[keyLength], 0));
+		}
+		
+		Candidate best = null;
+		for (ForkJoinTask<Candidate> task : tasks)
+		{
+			best = Candidate.best(best, ForkJoinPool.commonPool().invoke(task));
+		}
+		
+		String key = null;
+		if (best != null)
+		{
+			StringBuilder builder = new StringBuilder(best.m_letters.length);
+			for (byte letter : best.m_letters)
+			{
+				builder.append((char) ('a' + letter));
+			}
+			key = builder.toString();
+		}
+		
+		System.out.println("finished attacking, key: " + key);
+		return key;
+	}
+	
+	/**
+	 * Scores every shift of every coset by the average log frequency of its decrypted letters
+	 * 
+	 * @param prefix		Cipher text to score on
+	 * @param keyLength		Number of cosets
+	 * @return				Scores indexed by coset, then shift
+	 */
+	private float[][] scoreShifts(CharSequence prefix, int keyLength)
+	{
+		int[][] letterCounter = new int[keyLength][Util.ALPHABET_SIZE];
+		for (int i = 0; i < prefix.length(); i++)
+		{
+			letterCounter[i % keyLength][prefix.charAt(i) - 'a']++;
+		}
+		
+		float[][] scores = new float[keyLength][Util.ALPHABET_SIZE];
+		for (int k = 0; k < keyLength; k++)
+		{
+			int cosetLength = (prefix.length() - k + keyLength - 1) / keyLength;
+			
+			// s means shift, l means letter
+			for (int s = 0; s < Util.ALPHABET_SIZE; s++)
+			{
+				float score = 0;
+				for (int l = 0; l < Util.ALPHABET_SIZE; l++)
+				{
+					score += letterCounter[k][(l + s) % Util.ALPHABET_SIZE] * m_fLogFrequencies[l];
+				}
+				scores[k][s] = score / cosetLength;
+			}
+		}
+		return scores;
+	}
+	
+	/**
+	 * @param scores	Scores indexed by coset, then shift
+	 * @return			True for the shifts scoring within the tolerance of the best shift of their coset
+	 */
+	private static boolean[][] allowShifts(float[][] scores)
+	{
+		boolean[][] allowed = new boolean[scores.length][Util.ALPHABET_SIZE];
+		
+		for (int k = 0; k < scores.length; k++)
+		{
+			float best = Float.NEGATIVE_INFINITY;
+			for (float score : scores[k])
+			{
+				best = Math.max(best, score);
+			}
+			for (int s = 0; s < Util.ALPHABET_SIZE; s++)
+			{
+				allowed[k][s] = scores[k][s] >= best - SCORE_TOLERANCE;
+			}
+		}
+		return allowed;
+	}
+	
+	/**
+	 * Searches a subtree of a trie for the best scoring word. Near the root
+	 * every child gets a task of its own, deeper down the walk is sequential.
+	 */
+	private static class SearchTask extends RecursiveTask<Candidate>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final Dictionary.Trie m_trie;
+		private final float[][] m_fScores;
+		private final boolean[][] m_bAllowed;
+		private final int m_iNode;
+		private final int m_iDepth;
+		private final byte[] m_path;
+		private final float m_fScore;
+		
+		SearchTask(Dictionary.Trie trie, float[][] scores, boolean[][] allowed, int node, int depth, byte[] path, float score)
+		{
+			m_trie = trie;
+			m_fScores = scores;
+			m_bAllowed = allowed;
+			m_iNode = node;
+			m_iDepth = depth;
+			m_path = path;
+			m_fScore = score;
+		}
+		
+		@Override
+		protected Candidate compute()
+		{
+			if (m_iDepth >= FORK_DEPTH || m_iDepth == m_path.length)
+			{
+				return search(m_iNode, m_iDepth, m_path.clone(), m_fScore);
+			}
+			
+			List<SearchTask> subtasks = new ArrayList<SearchTask>();
+			for (int child = m_trie.getFirstChild(m_iNode); child != -1; child = m_trie.getNextSibling(child))
+			{
+				int letter = m_trie.getLetter(child);
+				if (!m_bAllowed[m_iDepth][letter])
+					continue;
+				
+				byte[] path = m_path.clone();
+				path[m_iDepth] = (byte) letter;
+				subtasks.add(new SearchTask(m_trie, m_fScores, m_bAllowed, child, m_iDepth + 1, path, 
+						m_fScore + m_fScores[m_iDepth][letter]));
+			}
+			
+			Candidate best = null;
+			for (SearchTask subtask : invokeAll(subtasks))
+			{
+				best = Candidate.best(best, subtask.join());
+			}
+			return best;
+		}
+		
+		/**
+		 * Walks a subtree depth first, skipping the children whose letter isn't allowed for their coset
+		 * 
+		 * @param node		Node to start from
+		 * @param depth		Depth of the node, i.e. the letters of the key so far
+		 * @param path		Letters of the key so far, reused for the whole walk
+		 * @param score		Score of the letters so far
+		 * @return			The best word of the subtree or null if all got pruned
+		 */
+		private Candidate search(int node, int depth, byte[] path, float score)
+		{
+			if (depth == path.length)
+			{
+				return new Candidate(path.clone(), score / path.length);
+			}
+			
+			Candidate best = null;
+			for (int child = m_trie.getFirstChild(node); child != -1; child = m_trie.getNextSibling(child))
+			{
+				int letter = m_trie.getLetter(child);
+				if (!m_bAllowed[depth][letter])
+					continue;
+				
+				path[depth] = (byte) letter;
+				Candidate candidate = search(child, depth + 1, path, score + m_fScores[depth][letter]);
+				
+				if (candidate != null && (best == null || candidate.m_fScore > best.m_fScore))
+				{
+					best = candidate;
+				}
+			}
+			return best;
+		}
+	}
+}
@@ -16,6 +16,7 @@ import cryptography.Caesar;
 class Exercise1
 {
 	private static final File NOVEL_FILE = new File(Text.SAMPLE_FILEPATH);
+	private static final File NOVEL_PROFILE_FILE = new File(Text.SAMPLE_PROFILE_FILEPATH);
 	private static final File CIPHER_FILE = new File("C:\\Users\\Ici\\Desktop\\Exercise1Ciphertext.txt");
 	private static final File CIPHER_FILE_DECRYPTED = new File("C:\\Users\\Ici\\Desktop\\Exercise1Ciphertext-decrypted.txt");
 	
@@ -25,8 +26,8 @@ class Exercise1
 	 */
 	public static void main(String[] args)
 	{
-		// Frequency analyse a novel
-		Text novel = new Text(NOVEL_FILE, false);
+		// Frequency analyse a novel, the counts are cached after the first run
+		Text novel = Profile.loadOrBuild(NOVEL_FILE, NOVEL_PROFILE_FILE).getSample();
 		System.out.println("Total number of letters: " + novel.getTotalLetters());
 		novel.printAnalysis(Text.AnalysisType.ByFrequency);
 		System.out.println("Index of coincidence: " + novel.getIndexOfCoincidence());
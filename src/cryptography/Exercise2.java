@@ -4,7 +4,11 @@
 package cryptography;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 import cryptography.Text;
 import cryptography.Text.AnalysisType;
@@ -19,6 +23,7 @@ import cryptography.Vigenere;
 class Exercise2
 {
 	private static final File NOVEL_FILE = new File(Text.SAMPLE_FILEPATH);
+	private static final File NOVEL_PROFILE_FILE = new File(Text.SAMPLE_PROFILE_FILEPATH);
 	private static final File NOVEL_FILE_ENCRYPTED = new File("C:\\Users\\Ici\\Desktop\\novel-encrypted.txt");
 	private static final File NOVEL_FILE_DECRYPTED = new File("C:\\Users\\Ici\\Desktop\\novel-decrypted.txt");
 	
@@ -46,34 +51,54 @@ class Exercise2
 		// Decrypt the novel now using the same password
 		Vigenere.decrypt(NOVEL_FILE_ENCRYPTED, NOVEL_FILE_DECRYPTED, password);
 		
-		// Compare frequency analyses
-		Text novel = new Text(NOVEL_FILE, false);
+		// Compare frequency analyses, the novel's counts are cached after the first run
+		Profile profile = Profile.loadOrBuild(NOVEL_FILE, NOVEL_PROFILE_FILE);
+		Text novel = profile.getSample();
 		Text encryptedNovel = new Text(NOVEL_FILE_ENCRYPTED, false);
 		novel.printAnalysis(AnalysisType.ByFrequency);
-		System.out.println("Index of coincidence: " + novel.getIndexOfCoincidence());
+		System.out.println("Index of coincidence: " + profile.getIndexOfCoincidence());
 		encryptedNovel.printAnalysis(AnalysisType.ByFrequency);
 		System.out.println("Index of coincidence: " + encryptedNovel.getIndexOfCoincidence());
 		
+		// Collect metrics from the analysers and print them as they run
+		Metrics metrics = new Metrics();
+		Metrics.install(metrics);
+		metrics.startReporter(5, TimeUnit.SECONDS, System.out);
+		
 		// Get the cipher from Exercise 2
 		Text cipher = new Text(CIPHER_FILE, true);
 		System.out.println("Total number of letters: " + cipher.getTotalLetters());
 		System.out.println("Index of coincidence: " + cipher.getIndexOfCoincidence());
 		
-		// Perform a Kasiski test on it
-		int keyLengthKasiski = Kasiski.test(cipher.getText());
-		System.out.println("[Kasiski] The most congruent key length: " + keyLengthKasiski);
+		// Perform a Kasiski test and a Friedman test on it at once, the slower one stops once they agree
+		KeyLengthEstimator estimator = new KeyLengthEstimator(KeyLengthEstimator.KASISKI, 
+				KeyLengthEstimator.friedman(profile.getIndexOfCoincidence()));
+		TopK keyLengths = estimator.estimate(cipher.getContents(), BatchCracker.VERIFIED_KEY_LENGTHS);
+		System.out.println("The most congruent key length: " + keyLengths.getId(0));
 		
-		// Perform a Friedman test
-		int keyLengthFriedman = Friedman.test(cipher.getText(), novel.getIndexOfCoincidence());
-		System.out.println("[Friedman] The most congruent key length: " + keyLengthFriedman);
+		// Attempt to break the Vigenere cipher with the best few key lengths, keeping a few keys of each
+		List<Vigenere.Candidate> candidates = new ArrayList<Vigenere.Candidate>();
+		for (int rank = 0; rank < keyLengths.size(); rank++)
+		{
+			CharSequence[] streams = Vigenere.breakDownCipher(cipher.getContents(), keyLengths.getId(rank));
+			candidates.addAll(Arrays.asList(Vigenere.rankKeys(novel, streams, BatchCracker.VERIFIED_KEYS_PER_LENGTH)));
+		}
 		
-		// Attempt to break the Vigenere cipher
-		String[] streams = Vigenere.breakDownCipher(cipher.getText(), keyLengthFriedman);
-		String key = Vigenere.cryptAnalyse(novel, streams);
+		// Try them all on the start of the cipher before decrypting the whole of it
+		QuadgramScorer scorer = new QuadgramScorer(profile);
+		String key = new KeyVerifier(profile, scorer).verify(cipher.getContents(), 
+				candidates.toArray(new Vigenere.Candidate[0]))[0].getKey();
 		System.out.println("The key is: " + key);
 		
+		// Frequency analysis can get a few letters wrong on short ciphers, quadgrams fix those
+		key = scorer.refine(cipher.getContents(), key);
+		System.out.println("The refined key is: " + key);
+		
 		// Decrypt the Vigenere cipher
 		Vigenere.decrypt(CIPHER_FILE, CIPHER_FILE_DECRYPTED, key); // voila
+		
+		metrics.close();
+		metrics.printSummary(System.out);
 	}
 	
 	/**
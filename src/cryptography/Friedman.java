@@ -3,8 +3,7 @@
  */
 package cryptography;
 
-import cryptography.Text;
-import cryptography.Vigenere;
+import cryptography.Util;
 
 /**
  * William Friedman's method of finding the key length using indices of coincidence.
@@ -24,59 +23,138 @@ class Friedman
 	 * @param sampleIoC		The index of coincidence for a big chunk of English
 	 * @return				The most congruent key length
 	 */
-	static int test(String cipher, float sampleIoC)
+	static int test(CharSequence cipher, float sampleIoC)
+	{
+		return test(cipher, sampleIoC, MIN_KEY_LENGTH, MAX_KEY_LENGTH);
+	}
+	
+	/**
+	 * Performs Friedman's test over any range of key lengths
+	 * 
+	 * @param cipher		Cipher text
+	 * @param sampleIoC		The index of coincidence for a big chunk of English
+	 * @param minLength		Shortest key length to try
+	 * @param maxLength		Longest key length to try
+	 * @return				The most congruent key length
+	 */
+	static int test(CharSequence cipher, float sampleIoC, int minLength, int maxLength)
+	{
+		return rankKeyLengths(cipher, sampleIoC, minLength, maxLength, 1).getId(0);
+	}
+	
+	/**
+	 * Performs Friedman's test, keeping the best few key lengths rather than just the best one
+	 * 
+	 * @param cipher		Cipher text
+	 * @param sampleIoC		The index of coincidence for a big chunk of English
+	 * @param minLength		Shortest key length to try
+	 * @param maxLength		Longest key length to try
+	 * @param k				Number of key lengths to keep
+	 * @return				The k most congruent key lengths, scored by how close their avg IoC is to English,
+	 * 						i.e. minus the difference
+	 */
+	static TopK rankKeyLengths(CharSequence cipher, float sampleIoC, int minLength, int maxLength, int k)
 	{
-		float[] avgIoC = new float[MAX_KEY_LENGTH + 1];
-		
 		System.out.println("Performing Friedman's test...");
 		
-		for (int len = MIN_KEY_LENGTH; len <= MAX_KEY_LENGTH; len++)
+		AnalysisListener listener = Metrics.listener();
+		long start = System.nanoTime();
+		
+		float[] avgIoC = getAverageIoC(cipher, minLength, maxLength);
+		
+		listener.phaseFinished("friedman.test", System.nanoTime() - start);
+		listener.processed("friedman.letters", cipher.length(), System.nanoTime() - start);
+		listener.count("friedman.key-lengths", maxLength - minLength + 1);
+		
+		// The ones closest to the IoC of English should be the right key length
+		TopK ranking = new TopK(k);
+		for (int len = minLength; len <= maxLength; len++)
 		{
-			String[] streams = Vigenere.breakDownCipher(cipher, len);
-			
-			// Analyse each stream of encrypted characters
-			Text[] cosets = new Text[streams.length];
-			float indexOfCoincidence = 0.0f;
-			
-			for (int i = 0; i < streams.length; i++)
-			{
-				cosets[i] = new Text(streams[i]);
-				indexOfCoincidence += cosets[i].getIndexOfCoincidence();
-			}
-			avgIoC[len] = indexOfCoincidence / len;
-			
-			System.out.printf("Key length: %2d | Avg Index of Coincidence: %f\n", len, avgIoC[len]);
+			ranking.offer(len, -Math.abs(avgIoC[len] - sampleIoC));
 		}
 		
-		// The one that's the closest to the IoC of English should be the right key length
-		return findClosestIndex(avgIoC, sampleIoC);
+		for (int rank = 0; rank < ranking.size(); rank++)
+		{
+			System.out.printf("Key length: %2d | Avg Index of Coincidence: %f\n", 
+					ranking.getId(rank), avgIoC[ranking.getId(rank)]);
+		}
+		return ranking;
 	}
 	
 	/**
-	 * Gets the closest value to a number in an array returns the index
+	 * Calculates the average index of coincidence of the cosets for every key length
+	 * at once. A single scan over the cipher fills a letter count matrix of 
+	 * [length][coset][letter] for all key lengths, no streams or cosets get copied.
 	 * 
-	 * @param array		Array of floats to scan through
-	 * @param value		Number to find closest match for
-	 * @return			The array index
+	 * @param cipher		Cipher text
+	 * @param minLength		Shortest key length to try
+	 * @param maxLength		Longest key length to try
+	 * @return				Avg index of coincidence indexed by key length, 0 below minLength
 	 */
-	static int findClosestIndex(float[] array, float value)
+	static float[] getAverageIoC(CharSequence cipher, int minLength, int maxLength)
 	{
-		// Initial state
-		float difference = Math.abs(array[0] - value);
-		int idx = 0;
+		// All count matrices live in one array, the matrix of each length starts at an offset
+		int[] offsets = new int[maxLength + 2];
+		for (int len = minLength; len <= maxLength; len++)
+		{
+			offsets[len + 1] = offsets[len] + len * Util.ALPHABET_SIZE;
+		}
+		int[] counts = new int[offsets[maxLength + 1]];
+		
+		// Index of the coset the current char belongs to, for each key length
+		int[] cosets = new int[maxLength + 1];
+		
+		Thread caller = Thread.currentThread();
+		for (int i = 0; i < cipher.length(); i++)
+		{
+			if ((i & (Util.INTERRUPT_CHECK_INTERVAL - 1)) == 0)
+			{
+				Util.checkInterrupted(caller);
+			}
+			
+			int letter = cipher.charAt(i) - 'a';
+			boolean isLetter = letter >= 0 && letter < Util.ALPHABET_SIZE;
+			
+			for (int len = minLength; len <= maxLength; len++)
+			{
+				if (isLetter)
+				{
+					counts[offsets[len] + cosets[len] * Util.ALPHABET_SIZE + letter]++;
+				}
+				
+				if (++cosets[len] == len)
+				{
+					cosets[len] = 0;
+				}
+			}
+		}
+		
+		float[] avgIoC = new float[maxLength + 1];
 		
-		// Compute closest match
-		for (int i = 1; i < array.length; i++)
+		for (int len = minLength; len <= maxLength; len++)
 		{
-			float newDifference = Math.abs(array[i] - value);
+			double indexOfCoincidence = 0.0;
 			
-			if (newDifference < difference)
+			for (int coset = 0; coset < len; coset++)
 			{
-				// Found a closer match
-				idx = i;
-				difference = newDifference;
+				int from = offsets[len] + coset * Util.ALPHABET_SIZE;
+				
+				long total = 0;
+				long sumOfSquares = 0;
+				for (int l = from; l < from + Util.ALPHABET_SIZE; l++)
+				{
+					total += counts[l];
+					sumOfSquares += (long) counts[l] * counts[l];
+				}
+				
+				// Same as Text.getIndexOfCoincidence(), the sum of squared frequencies
+				if (total > 0)
+				{
+					indexOfCoincidence += (double) sumOfSquares / ((double) total * total);
+				}
 			}
+			avgIoC[len] = (float) (indexOfCoincidence / len);
 		}
-		return idx;
+		return avgIoC;
 	}
 }
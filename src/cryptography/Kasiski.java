@@ -3,12 +3,6 @@
  */
 package cryptography;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import cryptography.Util;
 
 /**
@@ -25,160 +19,96 @@ class Kasiski
 	// The higher the max factor, the longer key you may break
 	static final int MAX_FACTOR = 10;
 	
+	// Shortest repeating n-gram counted as evidence, shorter ones repeat by chance too often
+	static final int MIN_NGRAM_LENGTH = 3;
+	
 	// Account for uncertainty of key length. The higher, the more possible key lengths assumed
 	private static final float KEY_TOLERANCE = 15.0f;
 	
+	// Longest key the scalable test looks for by default
+	static final int MAX_LONG_KEY_LENGTH = 2000;
+	
+	// Distances counted by the scalable test reach this many times the longest key
+	private static final int DISTANCE_SPAN = 32;
+	
+	// Number of key lengths printed by the scalable test
+	private static final int PRINTED_KEY_LENGTHS = 10;
+	
 	/**
-	 * Finds repeating words/patterns of text
+	 * Counts how many distances between repeating n-grams are factorizable by 
+	 * MIN_FACTOR up to MAX_FACTOR. Every pair of occurrences of an n-gram counts.
 	 * 
-	 * @param cipher	Cipher text
-	 * @return			A map of repeating words
+	 * @param index		An index of the n-grams of the cipher
+	 * @return			An array of longs representing num of distances factorizable by x
 	 */
-	static Map<String, Integer> getRepeatingWords(String cipher)
+	static long[] factorizeDistances(NGramIndex index)
 	{
-		System.out.printf("Finding repeating words of length [%d,%d] please wait...\n", 
-				MIN_FACTOR, MAX_FACTOR);
-		
-		// Key: word, Value: starting index
-		Map<String, Integer> repeatingWords = new LinkedHashMap<String, Integer>();
-		int totalWords = 0;
-		
-		String regex = String.format("(\\S{%d,%d})(?=.*?\\1)", MIN_FACTOR, MAX_FACTOR);
-		Matcher m = Pattern.compile(regex).matcher(cipher);
-		
-		while (m.find())
-		{
-			if (!repeatingWords.containsKey(m.group()))
-			{
-				totalWords++;
-				System.out.printf("Loading: %5.2f %% | Word #%d: %s\n", 
-						Util.getPercentage(m.end(), cipher.length()),
-						totalWords, m.group());
-				
-				// Key: word, Value: starting index
-				repeatingWords.put(m.group(), m.start());
-			}
-		}
-		System.out.printf("Found %d repeating words.\n\n", totalWords);
-		return repeatingWords;
+		System.out.println("Factorizing distances...");
+		return index.getFactorHistogram(MIN_FACTOR, MAX_FACTOR);
 	}
 	
 	/**
-	 * Calculates distances of repeating words
+	 * Ranks the possible key lengths of a polyalphabetical cipher /Vigenere/
 	 * 
-	 * @param cipher			Cipher text
-	 * @param repeatingWords	A map of repeating words returned by getRepeatingWords()
-	 * @return					A map of distance to first repeating occurence for each word
+	 * @param factorCounter	Array of longs representing num of distances factorizable by x
+	 * @param totalWords	Total number of distances
+	 * @param k				Number of key lengths to keep
+	 * @return				The k most congruent key lengths, scored by the percentage of distances they divide
 	 */
-	static Map<String, Integer> getDistances(String cipher, Map<String, Integer> repeatingWords)
+	static TopK rankKeyLengths(long[] factorCounter, long totalWords, int k)
 	{
-		// Key: word, Value: distance to first repeated occurrence
-		Map<String, Integer> distances = new LinkedHashMap<String, Integer>();
+		TopK ranking = new TopK(k);
 		
-		System.out.println("Calculating distance to first repeating occurrence for each word...");
-		
-		int wordNum = 0;
-		for (Entry<String, Integer> entry : repeatingWords.entrySet())
+		// Longer lengths go first, so they win a tie against their own divisors
+		for (int i = MAX_FACTOR; i >= MIN_FACTOR; i--)
 		{
-			wordNum++;
-			int distance = cipher.indexOf(entry.getKey(), entry.getValue() + entry.getKey().length()) - entry.getValue();
-			distances.put(entry.getKey(), distance);
-			
-			System.out.printf("Distance: %4d | #%d Word: %s\n", distance, wordNum, entry.getKey());
+			ranking.offer(i, Util.getPercentage(factorCounter[i], totalWords));
 		}
-		System.out.println();
-		return distances;
-	}
-	
-	/**
-	 * Counts how many of the words are factorizable by MIN_FACTOR up to MAX_FACTOR
-	 * 
-	 * @param distances		A map of distances of words returned by getDistances()
-	 * @return				An array of ints representing num of words factorizable by x
-	 */
-	static int[] factorizeDistances(Map<String, Integer> distances)
-	{
-		int[] factorCounter = new int[MAX_FACTOR + 1];
 		
-		System.out.println("Factorizing distances...");
-		
-		// For every distance
-		for (Entry<String, Integer> entry : distances.entrySet())
+		for (int rank = 0; rank < ranking.size(); rank++)
 		{
-			// Count up if it's factorizable by i
-			for (int i = MIN_FACTOR; i <= MAX_FACTOR; i++)
-			{
-				if (entry.getValue() % i == 0)
-				{
-					factorCounter[i]++;
-				}
-			}
+			System.out.printf("Num of distances factorizable by %2d : %d (%.2f %%)\n", 
+					ranking.getId(rank), factorCounter[ranking.getId(rank)], ranking.getScore(rank));
 		}
-		return factorCounter;
+		System.out.println();
+		
+		return ranking;
 	}
 	
 	/**
 	 * Used to find the most congruent key length of a polyalphabetical cipher /Vigenere/
 	 * 
-	 * @param factorCounter	Array of ints representing  num of words factorizable by x
-	 * @param totalWords	Total number of repeating words
+	 * @param factorCounter	Array of longs representing num of distances factorizable by x
+	 * @param totalWords	Total number of distances
 	 * @return				The most congruent key length
 	 */
-	static int findKeyLength(int[] factorCounter, int totalWords)
+	static int findKeyLength(long[] factorCounter, long totalWords)
 	{
-		Map<Integer, Integer> factorMap = new LinkedHashMap<Integer, Integer>();
-		
-		for (int i = MAX_FACTOR; i >= MIN_FACTOR; i--)
-		{
-			factorMap.put(i, factorCounter[i]);
-		}
-		
-		System.out.println("Sorting factors in descending order...");
-		factorMap = Util.sortMap(factorMap, true, false);
-		
-		for (Entry<Integer, Integer> entry : factorMap.entrySet())
-		{
-			System.out.printf("Num of words factorizable by %2d : %d (%.2f %%)\n", 
-					entry.getKey(), entry.getValue(), Util.getPercentage(entry.getValue(), totalWords));
-		}
-		System.out.println();
-
-		return (Integer) factorMap.keySet().toArray()[ 0 ];
+		return rankKeyLengths(factorCounter, totalWords, MAX_FACTOR - MIN_FACTOR + 1).getId(0);
 	}
 	
 	/**
 	 * Used to find the possible key lengths of a polyalphabetical cipher /Vigenere/
 	 * 
-	 * @param factorCounter	Array of ints representing  num of words factorizable by x
-	 * @param totalWords	Total number of repeating words
+	 * @param factorCounter	Array of longs representing num of distances factorizable by x
+	 * @param totalWords	Total number of distances
 	 * @return				An array of integers containing possible key lengths or null if couldn't find any
 	 */
-	static int[] findKeyLengths(int[] factorCounter, int totalWords)
+	static int[] findKeyLengths(long[] factorCounter, long totalWords)
 	{
-		Map<Integer, Integer> factorMap = new LinkedHashMap<Integer, Integer>();
-		
-		for (int i = MAX_FACTOR; i >= MIN_FACTOR; i--)
-		{
-			factorMap.put(i, factorCounter[i]);
-		}
-		
-		System.out.println("Sorting factors in descending order...");
-		factorMap = Util.sortMap(factorMap, true, false);
+		TopK ranking = rankKeyLengths(factorCounter, totalWords, MAX_FACTOR - MIN_FACTOR + 1);
 		
 		// Initial guess
 		float mostCongruent = 0.0f;
 		int numOfPossibleLengths = 0;
 		
-		for (Entry<Integer, Integer> entry : factorMap.entrySet())
+		for (int rank = 0; rank < ranking.size(); rank++)
 		{
-			System.out.printf("Num of words factorizable by %2d : %d (%.2f %%)\n", 
-					entry.getKey(), entry.getValue(), Util.getPercentage(entry.getValue(), totalWords));
-			
 			if (mostCongruent == 0.0f)
-				mostCongruent = Util.getPercentage(entry.getValue(), totalWords);
+				mostCongruent = ranking.getScore(rank);
 			
 			// Is this a possible key length?
-			if (mostCongruent <= Util.getPercentage(entry.getValue(), totalWords) + KEY_TOLERANCE)
+			if (mostCongruent <= ranking.getScore(rank) + KEY_TOLERANCE)
 				numOfPossibleLengths++;
 		}
 		
@@ -187,7 +117,7 @@ class Kasiski
 			int[] keyLengths = new int[numOfPossibleLengths];
 			for (int i = 0; i < numOfPossibleLengths; i++)
 			{
-				keyLengths[i] = (Integer) factorMap.keySet().toArray()[ i ];
+				keyLengths[i] = ranking.getId(i);
 			}
 			return keyLengths;
 		}
@@ -196,16 +126,162 @@ class Kasiski
 	
 	/**
 	 * Performs a Kasiski test. Used to estimate the length of the unknown keyword.
+	 * Every repeating n-gram of length [MIN_NGRAM_LENGTH,MAX_FACTOR] is found in a single
+	 * pass, and the distances between all of its occurrences are taken into account.
 	 * 
 	 * @param 	Cipher text
 	 * @return 	The most congruent key length
 	 */
-	static int test(String cipher)
+	static int test(CharSequence cipher)
+	{
+		return rank(cipher, MAX_FACTOR - MIN_FACTOR + 1).getId(0);
+	}
+	
+	/**
+	 * Performs a Kasiski test, keeping the best few key lengths rather than just the best one
+	 * 
+	 * @param cipher	Cipher text
+	 * @param k			Number of key lengths to keep
+	 * @return			The k most congruent key lengths, scored by the percentage of distances they divide
+	 */
+	static TopK rank(CharSequence cipher, int k)
 	{
-		Map<String, Integer> repeatingWords = getRepeatingWords(cipher);
-		Map<String, Integer> distances = getDistances(cipher, repeatingWords);
-		int[] factorCounter = factorizeDistances(distances);
+		System.out.printf("Indexing n-grams of length [%d,%d]...\n", MIN_NGRAM_LENGTH, MAX_FACTOR);
+		
+		AnalysisListener listener = Metrics.listener();
+		long start = System.nanoTime();
+		
+		NGramIndex index = new NGramIndex(cipher, MIN_NGRAM_LENGTH, MAX_FACTOR);
+		listener.phaseFinished("kasiski.ngram-index", System.nanoTime() - start);
+		listener.count("kasiski.ngrams", index.size());
+		
+		long factorStart = System.nanoTime();
+		long[] factorCounter = factorizeDistances(index);
+		listener.phaseFinished("kasiski.factorize", System.nanoTime() - factorStart);
+		listener.processed("kasiski.letters", cipher.length(), System.nanoTime() - start);
+		
+		return rankKeyLengths(factorCounter, index.getNumOfDistances(), k);
+	}
+	
+	/**
+	 * Performs a Kasiski test able to tell keys thousands of letters long. Instead of
+	 * checking each distance against each factor, the distances are counted into a
+	 * histogram first, see getDistanceHistogram(), and each factor then sums up the
+	 * counts of its own multiples, see getDivisorHistogram().
+	 * 
+	 * @param cipher		Cipher text
+	 * @param maxKeyLength	Longest key length to consider
+	 * @return				The most congruent key length
+	 */
+	static int test(CharSequence cipher, int maxKeyLength)
+	{
+		TopK ranking = rankLong(cipher, maxKeyLength, PRINTED_KEY_LENGTHS);
+		return ranking.size() == 0 ? 0 : ranking.getId(0);
+	}
+	
+	/**
+	 * Performs the scalable Kasiski test, keeping the best few key lengths. Unlike rank(),
+	 * the key lengths are scored against chance, so a short key doesn't beat its own multiples.
+	 * 
+	 * @param cipher		Cipher text
+	 * @param maxKeyLength	Longest key length to consider
+	 * @param k				Number of key lengths to keep
+	 * @return				The k most congruent key lengths scored by their z-scores, none if there are no distances
+	 */
+	static TopK rankLong(CharSequence cipher, int maxKeyLength, int k)
+	{
+		System.out.printf("Indexing n-grams of length [%d,%d]...\n", MIN_NGRAM_LENGTH, MAX_FACTOR);
+		
+		AnalysisListener listener = Metrics.listener();
+		long start = System.nanoTime();
+		
+		NGramIndex index = new NGramIndex(cipher, MIN_NGRAM_LENGTH, MAX_FACTOR);
+		listener.phaseFinished("kasiski.ngram-index", System.nanoTime() - start);
+		listener.count("kasiski.ngrams", index.size());
+		
+		// Distances far past the longest key add little but noise
+		int maxDistance = (int) Math.max(1, Math.min(cipher.length(), (long) maxKeyLength * DISTANCE_SPAN));
+		System.out.printf("Counting distances up to %d...\n", maxDistance);
+		
+		long distanceStart = System.nanoTime();
+		long[] distanceCounter = index.getDistanceHistogram(maxDistance);
+		listener.phaseFinished("kasiski.distances", System.nanoTime() - distanceStart);
+		
+		long factorStart = System.nanoTime();
+		long[] factorCounter = getDivisorHistogram(distanceCounter, MIN_FACTOR, maxKeyLength);
+		listener.phaseFinished("kasiski.factorize", System.nanoTime() - factorStart);
+		listener.processed("kasiski.letters", cipher.length(), System.nanoTime() - start);
+		
+		return rankLongKeyLengths(factorCounter, distanceCounter, k);
+	}
+	
+	/**
+	 * Counts how many distances are divisible by each factor, sieve style. Every factor
+	 * walks the histogram along its own multiples, so the whole thing takes about
+	 * D * ln(maxFactor) steps for D distinct distances, no divisions at all.
+	 * 
+	 * @param distanceCounter	Number of distances equal to x, indexed by x
+	 * @param minFactor			Smallest factor
+	 * @param maxFactor			Largest factor
+	 * @return					Number of distances divisible by x, indexed by x
+	 */
+	static long[] getDivisorHistogram(long[] distanceCounter, int minFactor, int maxFactor)
+	{
+		long[] factorCounter = new long[maxFactor + 1];
+		
+		for (int f = minFactor; f <= maxFactor; f++)
+		{
+			for (int multiple = f; multiple < distanceCounter.length; multiple += f)
+			{
+				factorCounter[f] += distanceCounter[multiple];
+			}
+		}
+		return factorCounter;
+	}
+	
+	/**
+	 * Ranks key lengths by how much their divisible distances stand out from chance.
+	 * Raw counts always favour small factors, since a random distance is divisible by f
+	 * one time in f. So each factor gets the z-score of its count against that chance.
+	 * If real repeats are a multiple of L apart, the z-score of L beats those of its
+	 * divisors and multiples by about the square root of their ratio.
+	 * 
+	 * @param factorCounter		Number of distances divisible by x, as returned by getDivisorHistogram()
+	 * @param distanceCounter	Number of distances equal to x, the longest counted is the last one
+	 * @param k					Number of key lengths to keep
+	 * @return					The k most congruent key lengths scored by their z-scores, none if there are no distances
+	 */
+	static TopK rankLongKeyLengths(long[] factorCounter, long[] distanceCounter, int k)
+	{
+		long totalDistances = 0;
+		for (long count : distanceCounter)
+		{
+			totalDistances += count;
+		}
+		
+		int maxDistance = distanceCounter.length - 1;
+		TopK ranking = new TopK(k);
+		
+		for (int f = MIN_FACTOR; f < factorCounter.length && totalDistances > 0; f++)
+		{
+			// Chance of a distance in [1,maxDistance] to be divisible by f
+			double p = (double) (maxDistance / f) / maxDistance;
+			double expected = totalDistances * p;
+			
+			if (expected > 0)
+			{
+				ranking.offer(f, (float) ((factorCounter[f] - expected) / Math.sqrt(expected * (1 - p))));
+			}
+		}
+		
+		for (int rank = 0; rank < ranking.size(); rank++)
+		{
+			int f = ranking.getId(rank);
+			System.out.printf("Num of distances factorizable by %4d : %d (%.2f %%, z-score %.1f)\n", f,
+					factorCounter[f], Util.getPercentage(factorCounter[f], totalDistances), ranking.getScore(rank));
+		}
+		System.out.println();
 		
-		return findKeyLength(factorCounter, repeatingWords.size());
+		return ranking;
 	}
 }
@@ -0,0 +1,325 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Estimates the key length with several methods at once, e.g. Kasiski's and Friedman's
+ * tests, each on its own thread over the same cipher. Every method runs in rounds over
+ * a growing prefix of the cipher, doubling it until the whole cipher is covered, and
+ * reports a ranking of key lengths after each round. The latest ranking of every method
+ * is turned into votes and summed up. As soon as all methods agree on the best key length
+ * and it leads the runner-up by enough, the methods still running get cancelled, so the
+ * time taken is bounded by the faster of them rather than the slower.
+ *
+ * @author Hristo Hristov
+ */
+class KeyLengthEstimator
+{
+	// Number of letters of the first round, every round after that doubles it
+	static final int FIRST_ROUND_LETTERS = 4096;
+	
+	// Lead of the best key length over the runner-up, per method, needed to stop early
+	static final float MIN_CONFIDENCE = 0.25f;
+	
+	/**
+	 * A way of estimating the key length
+	 */
+	interface Method
+	{
+		/**
+		 * @return	Name of the method to print
+		 */
+		String getName();
+		
+		/**
+		 * @param cipher	Cipher text, letters in the range [a,z]
+		 * @return			Every key length the method considers, best first
+		 */
+		TopK rank(CharSequence cipher);
+	}
+	
+	/**
+	 * Kasiski's test over [Kasiski.MIN_FACTOR,Kasiski.MAX_FACTOR], scored against chance
+	 * so the votes of a key length don't go to its divisors
+	 */
+	static final Method KASISKI = new Method()
+	{
+		@Override
+		public String getName()
+		{
+			return "Kasiski";
+		}
+		
+		@Override
+		public TopK rank(CharSequence cipher)
+		{
+			return Kasiski.rankLong(cipher, Kasiski.MAX_FACTOR, Kasiski.MAX_FACTOR - Kasiski.MIN_FACTOR + 1);
+		}
+	};
+	
+	/**
+	 * Friedman's test over [Friedman.MIN_KEY_LENGTH,Friedman.MAX_KEY_LENGTH]
+	 * 
+	 * @param sampleIoC		The index of coincidence for a big chunk of English
+	 * @return				The method
+	 */
+	static Method friedman(float sampleIoC)
+	{
+		return new Method()
+		{
+			@Override
+			public String getName()
+			{
+				return "Friedman";
+			}
+			
+			@Override
+			public TopK rank(CharSequence cipher)
+			{
+				return Friedman.rankKeyLengths(cipher, sampleIoC, Friedman.MIN_KEY_LENGTH,
+						Friedman.MAX_KEY_LENGTH, Friedman.MAX_KEY_LENGTH - Friedman.MIN_KEY_LENGTH + 1);
+			}
+		};
+	}
+	
+	/**
+	 * Ranking reported by a method after a round
+	 */
+	private static class Estimate
+	{
+		private final int m_iMethod;
+		private final int m_iLetters;
+		private final TopK m_ranking;
+		private final RuntimeException m_exception;
+		
+		private Estimate(int method, int letters, TopK ranking, RuntimeException exception)
+		{
+			m_iMethod = method;
+			m_iLetters = letters;
+			m_ranking = ranking;
+			m_exception = exception;
+		}
+	}
+	
+	private final Method[] m_methods;
+	
+	/**
+	 * @param methods	Methods to run at once, at least one
+	 */
+	KeyLengthEstimator(Method... methods)
+	{
+		if (methods.length == 0)
+		{
+			throw new IllegalArgumentException("At least one method is needed to estimate the key length");
+		}
+		m_methods = methods.clone();
+	}
+	
+	/**
+	 * Estimates the key length of a cipher
+	 * 
+	 * @param cipher	Cipher text, letters in the range [a,z], only ever read
+	 * @param k			Number of key lengths to keep
+	 * @return			The k key lengths with the most votes, scored by their votes.
+	 * 					Empty if the calling thread got interrupted before any method reported.
+	 */
+	TopK estimate(CharSequence cipher, int k)
+	{
+		System.out.printf("Estimating the key length with %d methods at once...\n", m_methods.length);
+		
+		AnalysisListener listener = Metrics.listener();
+		long start = System.nanoTime();
+		
+		BlockingQueue<Estimate> estimates = new LinkedBlockingQueue<Estimate>();
+		ExecutorService executor = Executors.newFixedThreadPool(m_methods.length, runnable -> {
+			Thread thread = new Thread(runnable, "key-length-estimator");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		TopK[] latest = new TopK[m_methods.length];
+		TopK votes = new TopK(k);
+		
+		try
+		{
+			for (int m = 0; m < m_methods.length; m++)
+			{
+				int method = m;
+				executor.execute(() -> runRounds(method, cipher, estimates));
+			}
+			
+			int running = m_methods.length;
+			while (running > 0)
+			{
+				Estimate estimate = estimates.take();
+				if (estimate.m_exception != null)
+				{
+					throw new IllegalStateException(m_methods[estimate.m_iMethod].getName() + " failed", estimate.m_exception);
+				}
+				if (estimate.m_iLetters == cipher.length())
+				{
+					running--;
+				}
+				
+				latest[estimate.m_iMethod] = estimate.m_ranking;
+				float confidence = vote(latest, votes);
+				
+				// A ranking can be empty, e.g. Kasiski's with no repeats at all
+				System.out.printf("[%s] %d letters: key length %s, overall %s (confidence %.2f)\n",
+						m_methods[estimate.m_iMethod].getName(), estimate.m_iLetters, getBest(estimate.m_ranking),
+						getBest(votes), confidence);
+				
+				if (running > 0 && confidence >= MIN_CONFIDENCE)
+				{
+					System.out.printf("The methods agree, cancelling the %d still running\n", running);
+					listener.count("estimator.cancelled", running);
+					break;
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// Keep whatever got reported so far
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			// Interrupts the methods still running, they give up within their current round
+			executor.shutdownNow();
+		}
+		
+		listener.phaseFinished("estimator.estimate", System.nanoTime() - start);
+		System.out.println();
+		return votes;
+	}
+	
+	/**
+	 * @return	The best key length of a ranking to print, a dash if it's empty
+	 */
+	private static String getBest(TopK ranking)
+	{
+		return ranking.size() == 0 ? "-" : Integer.toString(ranking.getId(0));
+	}
+	
+	/**
+	 * Runs a method over a doubling prefix of the cipher, reporting the ranking of each round.
+	 * Rounds before the last copy their prefix, the last one reads the shared cipher itself.
+	 * An interrupt cancels the round in progress, nothing gets reported after it.
+	 */
+	private void runRounds(int method, CharSequence cipher, BlockingQueue<Estimate> estimates)
+	{
+		try
+		{
+			int letters = Math.min(cipher.length(), FIRST_ROUND_LETTERS);
+			
+			while (!Thread.currentThread().isInterrupted())
+			{
+				CharSequence prefix = letters == cipher.length() ? cipher : cipher.subSequence(0, letters);
+				estimates.add(new Estimate(method, letters, m_methods[method].rank(prefix), null));
+				
+				if (letters == cipher.length())
+					break;
+				letters = (int) Math.min(cipher.length(), 2L * letters);
+			}
+		}
+		catch (CancellationException e)
+		{
+			// Nobody waits for the ranking any more
+		}
+		catch (RuntimeException e)
+		{
+			estimates.add(new Estimate(method, 0, null, e));
+		}
+	}
+	
+	/**
+	 * Sums up the votes of the latest rankings. Each ranking gives its best key length 1 vote,
+	 * its worst 0 and the ones in between a share of their score between those two, so methods
+	 * scoring on different scales count the same.
+	 * 
+	 * @param latest	Latest ranking of each method, null if none yet
+	 * @param votes		Cleared and filled with the key lengths with the most votes
+	 * @return			Lead of the best key length over the runner-up per method, 0 unless
+	 * 					every method reported and they all agree on the best key length
+	 */
+	static float vote(TopK[] latest, TopK votes)
+	{
+		int maxLength = 0;
+		for (TopK ranking : latest)
+		{
+			for (int rank = 0; ranking != null && rank < ranking.size(); rank++)
+			{
+				maxLength = Math.max(maxLength, ranking.getId(rank));
+			}
+		}
+		
+		float[] lengthVotes = new float[maxLength + 1];
+		boolean agree = true;
+		int agreedLength = 0;
+		
+		for (TopK ranking : latest)
+		{
+			if (ranking == null || ranking.size() == 0)
+			{
+				agree = false;
+				continue;
+			}
+			if (agreedLength == 0)
+			{
+				agreedLength = ranking.getId(0);
+			}
+			agree &= ranking.getId(0) == agreedLength;
+			
+			float best = ranking.getScore(0);
+			float worst = ranking.getScore(ranking.size() - 1);
+			for (int rank = 0; rank < ranking.size(); rank++)
+			{
+				lengthVotes[ranking.getId(rank)] += best == worst ? 1.0f : (ranking.getScore(rank) - worst) / (best - worst);
+			}
+		}
+		
+		// Longer lengths go first, so they win a tie against their own divisors
+		votes.clear();
+		for (int len = maxLength; len > 0; len--)
+		{
+			if (lengthVotes[len] > 0)
+			{
+				votes.offer(len, lengthVotes[len]);
+			}
+		}
+		
+		if (!agree || votes.size() == 0)
+			return 0.0f;
+		
+		// Multiples of the key length come close anyway, a key repeated twice decrypts just as
+		// well, so the runner-up is the best length that isn't a multiple or a divisor of the best.
+		// The best might be a multiple itself, e.g. 10 for a key of 2 with 4, 6 and 8 close behind,
+		// so go by its shortest divisor with at least half its votes.
+		int bestLength = votes.getId(0);
+		for (int len = 1; len < votes.getId(0); len++)
+		{
+			if (votes.getId(0) % len == 0 && lengthVotes[len] >= votes.getScore(0) / 2)
+			{
+				bestLength = len;
+				break;
+			}
+		}
+		
+		float runnerUp = 0.0f;
+		for (int len = 1; len <= maxLength; len++)
+		{
+			if (len % bestLength != 0 && bestLength % len != 0)
+			{
+				runnerUp = Math.max(runnerUp, lengthVotes[len]);
+			}
+		}
+		return (votes.getScore(0) - runnerUp) / latest.length;
+	}
+}
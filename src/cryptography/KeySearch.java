@@ -0,0 +1,282 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cryptography.Util;
+
+/**
+ * Searches for a Vigenere key by simulated annealing with random restarts, for ciphers
+ * too short or too odd for frequency analysis to get right. Restarts run on as many
+ * threads as asked for and share the best key found so far. The search stops as soon as
+ * the best key reads as English, or once rounds of restarts over every key length stop
+ * improving on it, rather than always using up its budget. Each search decrypts into
+ * a buffer of its own, so the inner loop doesn't allocate.
+ *
+ * @author Hristo Hristov
+ */
+class KeySearch
+{
+	// Steps of a single annealing run before restarting from a random key
+	static final int STEPS_PER_RESTART = 5000;
+	
+	// Starting temperature per letter of a coset, cools down linearly to 0
+	private static final float TEMPERATURE_PER_LETTER = 0.2f;
+	
+	// Steps taken between checks of the budget
+	private static final int STEPS_PER_CHECK = 1024;
+	
+	// Rounds of restarts over every key length without a better key before giving up
+	static final int STALE_ROUNDS = 3;
+	
+	private final QuadgramScorer m_scorer;
+	
+	/**
+	 * Best key found so far along with its score
+	 */
+	private static class Candidate
+	{
+		final int[] m_iShifts;
+		final float m_fScore;
+		
+		Candidate(int[] shifts, float score)
+		{
+			m_iShifts = shifts;
+			m_fScore = score;
+		}
+	}
+	
+	/**
+	 * @param scorer	Scorer to measure decryptions by
+	 */
+	KeySearch(QuadgramScorer scorer)
+	{
+		m_scorer = scorer;
+	}
+	
+	/**
+	 * Searches for the key until it reads as English, stops improving, or the time or
+	 * step budget runs out, whichever comes first
+	 * 
+	 * @param cipher		Cipher text, letters in the range [a,z]
+	 * @param keyLengths	Key lengths to try, e.g. the estimates of Kasiski's and Friedman's tests
+	 * @param timeBudget	Max time to search for in milliseconds
+	 * @param stepBudget	Max number of annealing steps over all threads
+	 * @param parallelism	Number of restart loops run at once. A single one runs on the calling
+	 * 						thread, e.g. a batch job's own, rather than on the common pool.
+	 * @return				The best key found
+	 */
+	String search(CharSequence cipher, int[] keyLengths, long timeBudget, long stepBudget, int parallelism)
+	{
+		System.out.printf("Annealing keys of length %s for up to %d ms... ", Arrays.toString(keyLengths), timeBudget);
+		
+		byte[] cipherLetters = QuadgramScorer.toLetters(cipher);
+		long deadline = System.nanoTime() + timeBudget * 1000000L;
+		AtomicLong steps = new AtomicLong(stepBudget);
+		AtomicLong restarts = new AtomicLong();
+		AtomicLong lastImprovement = new AtomicLong();
+		AtomicReference<Candidate> best = new AtomicReference<Candidate>();
+		
+		// One restart loop per thread, each with a random generator of its own
+		SplittableRandom random = new SplittableRandom();
+		long runs = 0;
+		if (parallelism <= 1)
+		{
+			runs = restart(cipherLetters, keyLengths, deadline, steps, restarts, lastImprovement, best, random);
+		}
+		else
+		{
+			List<ForkJoinTask<Long>> tasks = new ArrayList<ForkJoinTask<Long>>(parallelism);
+			for (int t = 0; t < parallelism; t++)
+			{
+				SplittableRandom taskRandom = random.split();
+				tasks.add(ForkJoinTask.adapt(() -> restart(cipherLetters, keyLengths, deadline, steps, restarts,
+						lastImprovement, best, taskRandom)));
+			}
+			for (ForkJoinTask<Long> task : ForkJoinTask.invokeAll(tasks))
+			{
+				runs += task.join();
+			}
+		}
+		
+		String key = toKey(best.get().m_iShifts);
+		System.out.printf("finished after %d restarts, key: %s\n", runs, key);
+		return key;
+	}
+	
+	/**
+	 * Keeps annealing from random keys until the best key reads as English, stops improving
+	 * or the budget runs out
+	 * 
+	 * @return	Number of runs annealed
+	 */
+	private long restart(byte[] cipherLetters, int[] keyLengths, long deadline, AtomicLong steps, 
+			AtomicLong restarts, AtomicLong lastImprovement, AtomicReference<Candidate> best, SplittableRandom random)
+	{
+		long staleRestarts = (long) STALE_ROUNDS * keyLengths.length;
+		
+		int maxLength = Arrays.stream(keyLengths).max().getAsInt();
+		byte[] plainLetters = new byte[cipherLetters.length];
+		int[] shifts = new int[maxLength];
+		int[] bestShifts = new int[maxLength];
+		long runs = 0;
+		
+		// Every key length gets at least one run, even if the budget runs out before,
+		// unless a key that reads as English turns up first
+		while (true)
+		{
+			Candidate current = best.get();
+			if (current != null && m_scorer.isPlausible(current.m_fScore, cipherLetters.length))
+				return runs;
+			
+			long r = restarts.getAndIncrement();
+			if (r >= keyLengths.length && (steps.get() <= 0 || System.nanoTime() >= deadline 
+					|| r - lastImprovement.get() >= staleRestarts))
+				return runs;
+			
+			runs++;
+			int keyLength = keyLengths[(int) (r % keyLengths.length)];
+			
+			for (int k = 0; k < keyLength; k++)
+			{
+				shifts[k] = random.nextInt(Util.ALPHABET_SIZE);
+				QuadgramScorer.decryptCoset(cipherLetters, plainLetters, k, keyLength, shifts[k]);
+			}
+			
+			anneal(cipherLetters, plainLetters, shifts, bestShifts, keyLength, deadline, steps, random);
+			
+			// Polish the best key of the run, then offer it to the other runs
+			for (int k = 0; k < keyLength; k++)
+			{
+				shifts[k] = bestShifts[k];
+				QuadgramScorer.decryptCoset(cipherLetters, plainLetters, k, keyLength, shifts[k]);
+			}
+			m_scorer.climb(cipherLetters, plainLetters, shifts, keyLength);
+			if (offer(best, Arrays.copyOf(shifts, keyLength), m_scorer.score(plainLetters)))
+			{
+				lastImprovement.accumulateAndGet(r, Math::max);
+			}
+		}
+	}
+	
+	/**
+	 * Anneals a key by changing one letter at a time. Better keys are always taken,
+	 * worse ones with a probability that drops as the temperature cools down.
+	 * 
+	 * @param cipherLetters		Cipher letters in the range [0,25]
+	 * @param plainLetters		Letters decrypted with the key, kept in sync with it
+	 * @param shifts			Key to start from, changed in place
+	 * @param bestShifts		Receives the best key seen during the run
+	 * @param keyLength			Number of shifts in use
+	 */
+	private void anneal(byte[] cipherLetters, byte[] plainLetters, int[] shifts, int[] bestShifts, int keyLength, 
+			long deadline, AtomicLong steps, SplittableRandom random)
+	{
+		float score = m_scorer.score(plainLetters);
+		float bestScore = score;
+		System.arraycopy(shifts, 0, bestShifts, 0, keyLength);
+		
+		float startTemperature = TEMPERATURE_PER_LETTER * cipherLetters.length / keyLength;
+		
+		for (int step = 0; step < STEPS_PER_RESTART; step++)
+		{
+			if (step % STEPS_PER_CHECK == 0 
+					&& (steps.addAndGet(-STEPS_PER_CHECK) < 0 || System.nanoTime() >= deadline))
+				break;
+			
+			float temperature = startTemperature * (STEPS_PER_RESTART - step) / STEPS_PER_RESTART;
+			
+			// Pick a letter and a different shift for it
+			int k = random.nextInt(keyLength);
+			int shift = random.nextInt(Util.ALPHABET_SIZE - 1);
+			if (shift >= shifts[k])
+			{
+				shift++;
+			}
+			
+			float before = m_scorer.scoreCoset(plainLetters, k, keyLength);
+			QuadgramScorer.decryptCoset(cipherLetters, plainLetters, k, keyLength, shift);
+			float delta = m_scorer.scoreCoset(plainLetters, k, keyLength) - before;
+			
+			if (delta >= 0 || random.nextDouble() < Math.exp(delta / temperature))
+			{
+				shifts[k] = shift;
+				score += delta;
+				
+				if (score > bestScore)
+				{
+					bestScore = score;
+					System.arraycopy(shifts, 0, bestShifts, 0, keyLength);
+				}
+			}
+			else
+			{
+				// Undo the change
+				QuadgramScorer.decryptCoset(cipherLetters, plainLetters, k, keyLength, shifts[k]);
+			}
+		}
+	}
+	
+	/**
+	 * Replaces the best key found so far if the given one scores higher
+	 * 
+	 * @return	True if the key was taken
+	 */
+	private static boolean offer(AtomicReference<Candidate> best, int[] shifts, float score)
+	{
+		Candidate candidate = new Candidate(shifts, score);
+		Candidate current = best.get();
+		
+		while (current == null || score > current.m_fScore)
+		{
+			if (best.compareAndSet(current, candidate))
+				return true;
+			
+			current = best.get();
+		}
+		return false;
+	}
+	
+	/**
+	 * Turns shifts into a key, dropping repeats, e.g. "abcabc" becomes "abc"
+	 * 
+	 * @param shifts	Shift values
+	 * @return			The shortest key with the same shifts
+	 */
+	static String toKey(int[] shifts)
+	{
+		int period = 1;
+		while (period < shifts.length && !isPeriod(shifts, period))
+		{
+			period++;
+		}
+		
+		StringBuilder key = new StringBuilder(period);
+		for (int k = 0; k < period; k++)
+		{
+			key.append((char) ('a' + shifts[k]));
+		}
+		return key.toString();
+	}
+	
+	private static boolean isPeriod(int[] shifts, int period)
+	{
+		if (shifts.length % period != 0)
+			return false;
+		
+		for (int k = period; k < shifts.length; k++)
+		{
+			if (shifts[k] != shifts[k - period])
+				return false;
+		}
+		return true;
+	}
+}
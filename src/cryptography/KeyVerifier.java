@@ -0,0 +1,125 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.util.concurrent.ForkJoinTask;
+
+import cryptography.Util;
+
+/**
+ * Picks the best of a few candidate keys by decrypting the start of the cipher with
+ * each of them, so a wrong key length or a wrong letter is caught before a whole file
+ * gets decrypted. Candidates are verified in parallel, one task each. With a quadgram
+ * scorer, every candidate is hill climbed on the prefix first and then scored by its
+ * quadgrams, otherwise by how well its letter frequencies match those of the sample.
+ *
+ * @author Hristo Hristov
+ */
+class KeyVerifier
+{
+	// Number of cipher letters each candidate decrypts
+	static final int PREFIX_LETTERS = 4000;
+	
+	private final Text m_sample;
+	private final QuadgramScorer m_scorer;
+	
+	/**
+	 * @param profile	Language profile to compare letter frequencies to
+	 * @param scorer	Scorer to climb and score the candidates with, null to go by letter frequencies
+	 */
+	KeyVerifier(Profile profile, QuadgramScorer scorer)
+	{
+		m_sample = profile.getSample();
+		m_scorer = scorer;
+	}
+	
+	/**
+	 * Verifies candidate keys on the start of a cipher
+	 * 
+	 * @param cipher		Cipher text, letters in the range [a,z]
+	 * @param candidates	Keys to verify, e.g. returned by Vigenere.rankKeys()
+	 * @return				The candidates best first, refined and scored by the verification
+	 */
+	Vigenere.Candidate[] verify(CharSequence cipher, Vigenere.Candidate[] candidates)
+	{
+		CharSequence prefix = cipher.subSequence(0, Math.min(cipher.length(), PREFIX_LETTERS));
+		System.out.printf("Verifying %d keys on the first %d letters... ", candidates.length, prefix.length());
+		
+		byte[] cipherLetters = QuadgramScorer.toLetters(prefix);
+		Vigenere.Candidate[] verified = new Vigenere.Candidate[candidates.length];
+		
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[candidates.length];
+		for (int c = 0; c < candidates.length; c++)
+		{
+			int candidate = c;
+			tasks[c] = ForkJoinTask.adapt(() -> verified[candidate] = verify(cipherLetters, candidates[candidate].getKey()));
+		}
+		ForkJoinTask.invokeAll(tasks);
+		
+		// Ties keep the order of the candidates
+		TopK ranking = new TopK(Math.max(1, candidates.length));
+		for (int c = 0; c < candidates.length; c++)
+		{
+			ranking.offer(c, verified[c].getScore());
+		}
+		
+		Vigenere.Candidate[] ranked = new Vigenere.Candidate[candidates.length];
+		for (int rank = 0; rank < candidates.length; rank++)
+		{
+			ranked[rank] = verified[ranking.getId(rank)];
+		}
+		
+		System.out.printf("finished, key: %s\n", ranked.length > 0 ? ranked[0].getKey() : null);
+		return ranked;
+	}
+	
+	/**
+	 * Decrypts the prefix with a key, refines the key if there's a scorer and scores it
+	 * 
+	 * @param cipherLetters		Prefix of the cipher in the range [0,25]
+	 * @param key				Key to verify
+	 * @return					The key, possibly refined, along with its score
+	 */
+	private Vigenere.Candidate verify(byte[] cipherLetters, String key)
+	{
+		int[] shifts = Vigenere.breakDownKey(key);
+		byte[] plainLetters = new byte[cipherLetters.length];
+		
+		for (int k = 0; k < shifts.length; k++)
+		{
+			QuadgramScorer.decryptCoset(cipherLetters, plainLetters, k, shifts.length, shifts[k]);
+		}
+		
+		if (m_scorer == null)
+		{
+			return new Vigenere.Candidate(KeySearch.toKey(shifts), -getDeviation(plainLetters));
+		}
+		
+		m_scorer.climb(cipherLetters, plainLetters, shifts, shifts.length);
+		return new Vigenere.Candidate(KeySearch.toKey(shifts), m_scorer.score(plainLetters));
+	}
+	
+	/**
+	 * @param plainLetters	Decrypted letters in the range [0,25]
+	 * @return				Sum of the differences of the letter frequencies to the sample's in %,
+	 * 						same as Caesar.cryptAnalyse()
+	 */
+	private float getDeviation(byte[] plainLetters)
+	{
+		int[] letterCounts = new int[Util.ALPHABET_SIZE];
+		for (byte letter : plainLetters)
+		{
+			letterCounts[letter]++;
+		}
+		
+		float deviation = 0.0f;
+		for (int l = 0; l < Util.ALPHABET_SIZE; l++)
+		{
+			deviation += Math.abs(
+				Util.getFrequency(m_sample.getLetterCount(l), m_sample.getTotalLetters()) 
+			  - Util.getFrequency(letterCounts[l], plainLetters.length));
+		}
+		return deviation;
+	}
+}
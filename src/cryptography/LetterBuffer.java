@@ -0,0 +1,86 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A growable buffer of lowercase letters. Letters are kept one byte each and
+ * the buffer can be read as a CharSequence without copying it.
+ *
+ * @author Hristo Hristov
+ */
+class LetterBuffer implements CharSequence
+{
+	private byte[] m_letters;
+	private int m_iLength = 0;
+	
+	/**
+	 * @param capacity	Number of letters to make room for up front
+	 */
+	LetterBuffer(int capacity)
+	{
+		m_letters = new byte[Math.max(16, capacity)];
+	}
+	
+	/**
+	 * Appends a letter, growing the buffer if needed
+	 * 
+	 * @param letter	Letter in the range [a,z]
+	 */
+	void append(int letter)
+	{
+		if (m_iLength == m_letters.length)
+		{
+			ensureCapacity(m_iLength + 1);
+		}
+		m_letters[m_iLength++] = (byte) letter;
+	}
+	
+	/**
+	 * Makes room for at least the given number of letters
+	 * 
+	 * @param capacity	Number of letters to make room for
+	 */
+	void ensureCapacity(int capacity)
+	{
+		if (capacity > m_letters.length)
+		{
+			// Grow by half, so appending stays linear overall
+			int grown = Math.max(capacity, m_letters.length + (m_letters.length >> 1));
+			m_letters = Arrays.copyOf(m_letters, grown);
+		}
+	}
+	
+	@Override
+	public int length()
+	{
+		return m_iLength;
+	}
+	
+	@Override
+	public char charAt(int index)
+	{
+		if (index >= m_iLength)
+		{
+			throw new IndexOutOfBoundsException(index);
+		}
+		return (char) m_letters[ index ];
+	}
+	
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		Objects.checkFromToIndex(start, end, m_iLength);
+		return new String(m_letters, start, end - start, StandardCharsets.ISO_8859_1);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return new String(m_letters, 0, m_iLength, StandardCharsets.ISO_8859_1);
+	}
+}
@@ -0,0 +1,294 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Sidecar index of a text file holding the number of ASCII letters before every
+ * checkpoint, one checkpoint every N bytes. The key of a Vigenere cipher only moves
+ * on letters, so knowing how many letters come before a byte is knowing where in the
+ * key it is. With the index, any range of a cipher can be decrypted by counting the
+ * letters from the checkpoint before it only, see CipherStream.transformRange().
+ *
+ * File layout (big-endian):
+ * magic, version, bytes between checkpoints, size of the indexed file,
+ * number of checkpoints, then the letters before each of them.
+ *
+ * @author Hristo Hristov
+ */
+class LetterIndex
+{
+	// "VGLI"
+	private static final int MAGIC = 0x56474C49;
+	private static final int VERSION = 1;
+	
+	// Bytes between checkpoints, the index takes 8 bytes per checkpoint
+	static final int DEFAULT_INTERVAL = 1 << 16;
+	
+	private final int m_iInterval;
+	private final long m_lFileBytes;
+	
+	// Letters before byte i * interval, indexed by i
+	private final long[] m_lLetters;
+	
+	/**
+	 * Counts the letters of a file as it's written, e.g. while it's being encrypted
+	 */
+	static class Builder
+	{
+		private final int m_iInterval;
+		private long[] m_lLetters = new long[16];
+		private int m_iCheckpoints = 1;
+		private long m_lBytes = 0;
+		private long m_lTotalLetters = 0;
+		
+		/**
+		 * @param interval	Bytes between checkpoints
+		 */
+		Builder(int interval)
+		{
+			if (interval < 1)
+			{
+				throw new IllegalArgumentException("Checkpoints need at least a byte between them, got " + interval);
+			}
+			m_iInterval = interval;
+		}
+		
+		/**
+		 * Counts the next bytes of the file
+		 * 
+		 * @param bytes		Bytes from the position up to the limit, left as they are
+		 */
+		void append(ByteBuffer bytes)
+		{
+			int from = bytes.position();
+			int to = bytes.limit();
+			
+			while (from < to)
+			{
+				// Stop at the next checkpoint
+				int length = (int) Math.min(to - from, m_iInterval - m_lBytes % m_iInterval);
+				m_lTotalLetters += ShiftKernel.countLetters(bytes.slice(from, length));
+				m_lBytes += length;
+				from += length;
+				
+				if (m_lBytes % m_iInterval == 0)
+				{
+					if (m_iCheckpoints == m_lLetters.length)
+					{
+						m_lLetters = Arrays.copyOf(m_lLetters, 2 * m_lLetters.length);
+					}
+					m_lLetters[m_iCheckpoints++] = m_lTotalLetters;
+				}
+			}
+		}
+		
+		/**
+		 * @return	The index of everything appended so far
+		 */
+		LetterIndex build()
+		{
+			return new LetterIndex(m_iInterval, m_lBytes, Arrays.copyOf(m_lLetters, m_iCheckpoints));
+		}
+	}
+	
+	private LetterIndex(int interval, long fileBytes, long[] letters)
+	{
+		m_iInterval = interval;
+		m_lFileBytes = fileBytes;
+		m_lLetters = letters;
+	}
+	
+	/**
+	 * @param file	Text file, e.g. a cipher
+	 * @return		Where the index of the file is kept, next to the file
+	 */
+	static File getIndexFile(File file)
+	{
+		return new File(file.getPath() + ".letters");
+	}
+	
+	/**
+	 * Indexes a file in a single pass
+	 * 
+	 * @param file		File to index
+	 * @param interval	Bytes between checkpoints
+	 * @return			The index of the file
+	 * @throws IOException
+	 */
+	static LetterIndex build(File file, int interval) throws IOException
+	{
+		Builder builder = new Builder(interval);
+		
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			
+			for (long offset = 0; offset < size; offset += CipherStream.MAP_SIZE)
+			{
+				MappedByteBuffer region = channel.map(MapMode.READ_ONLY, offset,
+						Math.min(CipherStream.MAP_SIZE, size - offset));
+				builder.append(region);
+			}
+		}
+		return builder.build();
+	}
+	
+	/**
+	 * Loads the index kept next to a file, or indexes the file and keeps the index next to it
+	 * if there's none yet or the file has changed since
+	 * 
+	 * @param file	File to index
+	 * @return		The index of the file
+	 * @throws IOException	If the file can't be read
+	 */
+	static LetterIndex loadOrBuild(File file) throws IOException
+	{
+		File indexFile = getIndexFile(file);
+		if (indexFile.exists() && indexFile.lastModified() >= file.lastModified())
+		{
+			try
+			{
+				LetterIndex index = load(indexFile);
+				if (index.getFileBytes() == file.length())
+				{
+					return index;
+				}
+			}
+			catch (IOException e)
+			{
+				// Fall back to building it again
+				e.printStackTrace();
+			}
+		}
+		
+		LetterIndex index = build(file, DEFAULT_INTERVAL);
+		try
+		{
+			index.save(indexFile);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		return index;
+	}
+	
+	/**
+	 * Loads an index saved by save()
+	 * 
+	 * @param indexFile		File to load from
+	 * @return				The loaded index
+	 * @throws IOException
+	 */
+	static LetterIndex load(File indexFile) throws IOException
+	{
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ))
+		{
+			buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) != -1)
+			{
+				// Keep reading until the whole file is in
+			}
+			buffer.flip();
+		}
+		
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+		{
+			throw new IOException("Not a letter index: " + indexFile.getPath());
+		}
+		
+		try
+		{
+			int interval = buffer.getInt();
+			long fileBytes = buffer.getLong();
+			long[] letters = new long[buffer.getInt()];
+			buffer.asLongBuffer().get(letters);
+			
+			if (interval < 1 || letters.length != fileBytes / interval + 1)
+			{
+				throw new IOException("Corrupt letter index: " + indexFile.getPath());
+			}
+			return new LetterIndex(interval, fileBytes, letters);
+		}
+		catch (RuntimeException e)
+		{
+			throw new IOException("Corrupt letter index: " + indexFile.getPath(), e);
+		}
+	}
+	
+	/**
+	 * Saves the index in its binary format
+	 * 
+	 * @param indexFile		File to save to
+	 * @throws IOException
+	 */
+	void save(File indexFile) throws IOException
+	{
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(indexFile), CipherStream.BLOCK_SIZE)))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(m_iInterval);
+			out.writeLong(m_lFileBytes);
+			out.writeInt(m_lLetters.length);
+			
+			for (long letters : m_lLetters)
+			{
+				out.writeLong(letters);
+			}
+		}
+	}
+	
+	/**
+	 * @return	Bytes between checkpoints
+	 */
+	int getInterval()
+	{
+		return m_iInterval;
+	}
+	
+	/**
+	 * @return	Size of the indexed file, an index of a file of another size is out of date
+	 */
+	long getFileBytes()
+	{
+		return m_lFileBytes;
+	}
+	
+	/**
+	 * @param offset	Byte offset in the range [0,file size]
+	 * @return			The last checkpoint at or before the offset
+	 */
+	int getCheckpoint(long offset)
+	{
+		if (offset < 0 || offset > m_lFileBytes)
+		{
+			throw new IndexOutOfBoundsException(String.format("Offset %d out of %d bytes", offset, m_lFileBytes));
+		}
+		return (int) (offset / m_iInterval);
+	}
+	
+	/**
+	 * @param checkpoint	Checkpoint as returned by getCheckpoint()
+	 * @return				Number of letters before the checkpoint's byte, i.e. before byte checkpoint * interval
+	 */
+	long getLetters(int checkpoint)
+	{
+		return m_lLetters[ checkpoint ];
+	}
+}
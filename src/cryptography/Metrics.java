@@ -0,0 +1,156 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects counters, phase timers and throughput gauges reported by the analysers,
+ * and optionally prints a summary of them periodically. Also holds the listener
+ * the analysers report to, which ignores everything unless one is installed.
+ *
+ * @author Hristo Hristov
+ */
+class Metrics implements AnalysisListener, AutoCloseable
+{
+	private static volatile AnalysisListener s_listener = AnalysisListener.NONE;
+	
+	// Key: name, Value: total so far
+	private final Map<String, LongAdder> m_counters = new ConcurrentHashMap<String, LongAdder>();
+	
+	// Key: name, Value: number of times and total time taken
+	private final Map<String, LongAdder[]> m_timers = new ConcurrentHashMap<String, LongAdder[]>();
+	
+	// Key: name, Value: units of work and total time taken
+	private final Map<String, LongAdder[]> m_gauges = new ConcurrentHashMap<String, LongAdder[]>();
+	
+	private ScheduledExecutorService m_reporter;
+	
+	/**
+	 * @return	The listener the analysers report to
+	 */
+	static AnalysisListener listener()
+	{
+		return s_listener;
+	}
+	
+	/**
+	 * Makes the analysers report to a listener
+	 * 
+	 * @param listener	Listener to report to, null to stop reporting
+	 */
+	static void install(AnalysisListener listener)
+	{
+		s_listener = listener == null ? AnalysisListener.NONE : listener;
+	}
+	
+	@Override
+	public void count(String counter, long amount)
+	{
+		m_counters.computeIfAbsent(counter, name -> new LongAdder()).add(amount);
+	}
+	
+	@Override
+	public void phaseFinished(String phase, long nanos)
+	{
+		LongAdder[] timer = m_timers.computeIfAbsent(phase, name -> newPair());
+		timer[0].increment();
+		timer[1].add(nanos);
+	}
+	
+	@Override
+	public void processed(String gauge, long units, long nanos)
+	{
+		LongAdder[] pair = m_gauges.computeIfAbsent(gauge, name -> newPair());
+		pair[0].add(units);
+		pair[1].add(nanos);
+	}
+	
+	/**
+	 * @param counter	Name of the counter
+	 * @return			Total so far, 0 if never counted
+	 */
+	long getCount(String counter)
+	{
+		LongAdder adder = m_counters.get(counter);
+		return adder == null ? 0 : adder.sum();
+	}
+	
+	/**
+	 * Prints a summary every period until closed
+	 * 
+	 * @param period	Time between two summaries
+	 * @param unit		Unit of the period
+	 * @param out		Stream to print to
+	 */
+	synchronized void startReporter(long period, TimeUnit unit, PrintStream out)
+	{
+		if (m_reporter != null)
+			return;
+		
+		m_reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		m_reporter.scheduleAtFixedRate(() -> printSummary(out), period, period, unit);
+	}
+	
+	/**
+	 * Prints every counter, timer and gauge sorted by name
+	 * 
+	 * @param out	Stream to print to
+	 */
+	void printSummary(PrintStream out)
+	{
+		StringBuilder summary = new StringBuilder("Metrics summary:\n");
+		
+		for (Map.Entry<String, LongAdder> entry : new TreeMap<String, LongAdder>(m_counters).entrySet())
+		{
+			summary.append(String.format("  %-32s %12d\n", entry.getKey(), entry.getValue().sum()));
+		}
+		for (Map.Entry<String, LongAdder[]> entry : new TreeMap<String, LongAdder[]>(m_timers).entrySet())
+		{
+			long times = entry.getValue()[0].sum();
+			long nanos = entry.getValue()[1].sum();
+			summary.append(String.format("  %-32s %12.2f ms total, %d times, %.2f ms avg\n", entry.getKey(), 
+					nanos / 1e6, times, times == 0 ? 0 : nanos / 1e6 / times));
+		}
+		for (Map.Entry<String, LongAdder[]> entry : new TreeMap<String, LongAdder[]>(m_gauges).entrySet())
+		{
+			long units = entry.getValue()[0].sum();
+			long nanos = entry.getValue()[1].sum();
+			summary.append(String.format("  %-32s %12d units, %.0f units/sec\n", entry.getKey(), 
+					units, nanos == 0 ? 0 : units * 1e9 / nanos));
+		}
+		
+		// One print, so summaries from the reporter thread don't interleave line by line
+		out.print(summary);
+	}
+	
+	/**
+	 * Stops the periodic reporter, if started
+	 */
+	@Override
+	public synchronized void close()
+	{
+		if (m_reporter != null)
+		{
+			m_reporter.shutdownNow();
+			m_reporter = null;
+		}
+	}
+	
+	private static LongAdder[] newPair()
+	{
+		return new LongAdder[] { new LongAdder(), new LongAdder() };
+	}
+}
@@ -0,0 +1,382 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import cryptography.Util;
+
+/**
+ * An index of every n-gram of a text along with all of its starting indices.
+ * N-grams are hashed with a Rabin-Karp rolling hash in base 26, which is exact
+ * for n-grams of up to MAX_LENGTH letters, so no two n-grams share a hash.
+ * Hashes map to lists of starting indices through an open addressing table
+ * made of primitive arrays, the lists themselves are linked through an int array.
+ *
+ * @author Hristo Hristov
+ */
+class NGramIndex
+{
+	// Longest n-gram whose hash still fits in a long
+	static final int MAX_LENGTH = 13;
+	
+	// Marks an empty slot, every hash is at least 26
+	private static final long EMPTY = 0L;
+	
+	// Number of table shards per thread the distance histogram is split into
+	private static final int SHARDS_PER_THREAD = 2;
+	
+	// Open addressing table, Key: hash, Value: first, last and number of indices
+	private long[] m_lKeys;
+	private int[] m_iFirst;
+	private int[] m_iLast;
+	private int[] m_iCount;
+	private int m_iSize = 0;
+	
+	// Linked lists of starting indices, one entry per n-gram occurrence
+	private int[] m_iIndices;
+	private int[] m_iNext;
+	private int m_iOccurrences = 0;
+	
+	/**
+	 * Indexes every n-gram of length [minLength,maxLength] in a single pass.
+	 * N-grams don't span non-alphabetical chars.
+	 * 
+	 * @param text			Text to index
+	 * @param minLength		Shortest n-gram
+	 * @param maxLength		Longest n-gram, at most MAX_LENGTH
+	 */
+	NGramIndex(CharSequence text, int minLength, int maxLength)
+	{
+		if (minLength < 1 || maxLength > MAX_LENGTH || minLength > maxLength)
+		{
+			throw new IllegalArgumentException(String.format(
+					"N-gram lengths must be within [1,%d], got [%d,%d]", MAX_LENGTH, minLength, maxLength));
+		}
+		
+		int capacity = Integer.highestOneBit(Math.max(16, text.length())) << 1;
+		m_lKeys = new long[capacity];
+		m_iFirst = new int[capacity];
+		m_iLast = new int[capacity];
+		m_iCount = new int[capacity];
+		
+		m_iIndices = new int[Math.max(16, text.length())];
+		m_iNext = new int[Math.max(16, text.length())];
+		
+		// powers[n] = 26^n, used to drop the oldest letter and to tell lengths apart
+		long[] powers = new long[maxLength + 1];
+		powers[0] = 1;
+		for (int n = 1; n <= maxLength; n++)
+		{
+			powers[n] = powers[n - 1] * Util.ALPHABET_SIZE;
+		}
+		
+		// hashes[n] is the hash of the last n letters
+		long[] hashes = new long[maxLength + 1];
+		int run = 0;
+		
+		Thread caller = Thread.currentThread();
+		for (int i = 0; i < text.length(); i++)
+		{
+			if ((i & (Util.INTERRUPT_CHECK_INTERVAL - 1)) == 0)
+			{
+				Util.checkInterrupted(caller);
+			}
+			
+			int letter = text.charAt(i) - 'a';
+			
+			// Start over after a non-alphabetical char
+			if (letter < 0 || letter >= Util.ALPHABET_SIZE)
+			{
+				run = 0;
+				Arrays.fill(hashes, 0L);
+				continue;
+			}
+			run++;
+			
+			for (int n = minLength; n <= Math.min(run, maxLength); n++)
+			{
+				// Roll the window forward, dropping the letter that falls out of it
+				long hash = hashes[n];
+				if (run > n)
+				{
+					hash -= (text.charAt(i - n) - 'a') * powers[n - 1];
+				}
+				hash = hash * Util.ALPHABET_SIZE + letter;
+				hashes[n] = hash;
+				
+				// Leading 1 digit keeps n-grams of different lengths apart
+				add(powers[n] + hash, i - n + 1);
+			}
+			
+			// Keep the shorter windows going for when the run gets long enough
+			for (int n = run + 1; n <= maxLength; n++)
+			{
+				hashes[n] = hashes[n] * Util.ALPHABET_SIZE + letter;
+			}
+		}
+	}
+	
+	/**
+	 * @return	Number of distinct n-grams
+	 */
+	int size()
+	{
+		return m_iSize;
+	}
+	
+	/**
+	 * @return	Number of pairs of occurrences of the same n-gram
+	 */
+	long getNumOfDistances()
+	{
+		long pairs = 0;
+		
+		for (int slot = 0; slot < m_lKeys.length; slot++)
+		{
+			if (m_lKeys[slot] != EMPTY)
+			{
+				pairs += (long) m_iCount[slot] * (m_iCount[slot] - 1) / 2;
+			}
+		}
+		return pairs;
+	}
+	
+	/**
+	 * Counts how many pairwise distances are divisible by each factor. Two indices are
+	 * a multiple of f apart exactly when they're equal modulo f, so instead of going
+	 * through every pair, the indices of an n-gram are bucketed by their remainder.
+	 * 
+	 * @param minFactor		Smallest factor
+	 * @param maxFactor		Largest factor
+	 * @return				Number of distances divisible by x, indexed by x
+	 */
+	long[] getFactorHistogram(int minFactor, int maxFactor)
+	{
+		long[] factorCounter = new long[maxFactor + 1];
+		int[] remainders = new int[maxFactor];
+		int[] indices = new int[16];
+		
+		for (int slot = 0; slot < m_lKeys.length; slot++)
+		{
+			if (m_lKeys[slot] == EMPTY || m_iCount[slot] < 2)
+			{
+				continue;
+			}
+			
+			indices = getIndices(slot, indices);
+			for (int f = minFactor; f <= maxFactor; f++)
+			{
+				Arrays.fill(remainders, 0, f, 0);
+				for (int i = 0; i < m_iCount[slot]; i++)
+				{
+					remainders[indices[i] % f]++;
+				}
+				
+				// Pairs sharing a remainder
+				for (int r = 0; r < f; r++)
+				{
+					factorCounter[f] += (long) remainders[r] * (remainders[r] - 1) / 2;
+				}
+			}
+		}
+		return factorCounter;
+	}
+	
+	/**
+	 * Counts the pairs of occurrences of the same n-gram by their distance. The table
+	 * is split into shards going through the common pool at once, each shard counts
+	 * into a histogram of its own and the histograms are merged as the shards join.
+	 * 
+	 * @param maxDistance	Longest distance counted, pairs further apart are skipped
+	 * @return				Number of pairs at distance x, indexed by x
+	 */
+	long[] getDistanceHistogram(int maxDistance)
+	{
+		int shards = ForkJoinPool.getCommonPoolParallelism() * SHARDS_PER_THREAD;
+		int shardSize = Math.max(1, (m_lKeys.length + shards - 1) / shards);
+		
+		return ForkJoinPool.commonPool().invoke(new DistanceTask(Thread.currentThread(), maxDistance, shardSize, 0, m_lKeys.length));
+	}
+	
+	/**
+	 * Fork-join task counting the pairwise distances of the n-grams in a range of slots
+	 */
+	private class DistanceTask extends RecursiveTask<long[]>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		// Thread that asked for the histogram, the shards give up once it gets interrupted
+		private final Thread m_caller;
+		private final int m_iMaxDistance;
+		private final int m_iShardSize;
+		private final int m_from;
+		private final int m_to;
+		
+		DistanceTask(Thread caller, int maxDistance, int shardSize, int from, int to)
+		{
+			m_caller = caller;
+			m_iMaxDistance = maxDistance;
+			m_iShardSize = shardSize;
+			m_from = from;
+			m_to = to;
+		}
+		
+		@Override
+		protected long[] compute()
+		{
+			// Split until the range fits in a shard
+			if (m_to - m_from > m_iShardSize)
+			{
+				int middle = (m_from + m_to) >>> 1;
+				DistanceTask left = new DistanceTask(m_caller, m_iMaxDistance, m_iShardSize, m_from, middle);
+				left.fork();
+				long[] histogram = new DistanceTask(m_caller, m_iMaxDistance, m_iShardSize, middle, m_to).compute();
+				
+				long[] other = left.join();
+				for (int d = 0; d < histogram.length; d++)
+				{
+					histogram[d] += other[d];
+				}
+				return histogram;
+			}
+			
+			long[] histogram = new long[m_iMaxDistance + 1];
+			int[] indices = new int[16];
+			
+			for (int slot = m_from; slot < m_to; slot++)
+			{
+				if ((slot & (Util.INTERRUPT_CHECK_INTERVAL - 1)) == 0)
+				{
+					Util.checkInterrupted(m_caller);
+				}
+				
+				if (m_lKeys[slot] == EMPTY || m_iCount[slot] < 2)
+				{
+					continue;
+				}
+				
+				// Indices are ascending, so every later one is at least as far
+				indices = getIndices(slot, indices);
+				for (int i = 0; i < m_iCount[slot]; i++)
+				{
+					for (int j = i + 1; j < m_iCount[slot] && indices[j] - indices[i] <= m_iMaxDistance; j++)
+					{
+						histogram[indices[j] - indices[i]]++;
+					}
+				}
+			}
+			return histogram;
+		}
+	}
+	
+	/**
+	 * Copies the starting indices of an n-gram into an array, growing it when needed
+	 * 
+	 * @param slot		Slot of the n-gram in the table
+	 * @param indices	Array to reuse
+	 * @return			Array holding the indices in ascending order
+	 */
+	private int[] getIndices(int slot, int[] indices)
+	{
+		if (indices.length < m_iCount[slot])
+		{
+			indices = new int[Integer.highestOneBit(m_iCount[slot]) << 1];
+		}
+		
+		int i = 0;
+		for (int entry = m_iFirst[slot]; entry != -1; entry = m_iNext[entry])
+		{
+			indices[i++] = m_iIndices[entry];
+		}
+		return indices;
+	}
+	
+	/**
+	 * Appends a starting index to the list of an n-gram
+	 * 
+	 * @param key	Hash of the n-gram
+	 * @param index	Starting index of the n-gram
+	 */
+	private void add(long key, int index)
+	{
+		if (m_iOccurrences == m_iIndices.length)
+		{
+			m_iIndices = Arrays.copyOf(m_iIndices, m_iIndices.length << 1);
+			m_iNext = Arrays.copyOf(m_iNext, m_iNext.length << 1);
+		}
+		int entry = m_iOccurrences++;
+		m_iIndices[entry] = index;
+		m_iNext[entry] = -1;
+		
+		int slot = findSlot(m_lKeys, key);
+		if (m_lKeys[slot] == EMPTY)
+		{
+			m_lKeys[slot] = key;
+			m_iFirst[slot] = entry;
+			m_iLast[slot] = entry;
+			m_iCount[slot] = 1;
+			
+			// Keep the table at most half full
+			if (++m_iSize > m_lKeys.length >>> 1)
+			{
+				grow();
+			}
+			return;
+		}
+		m_iNext[m_iLast[slot]] = entry;
+		m_iLast[slot] = entry;
+		m_iCount[slot]++;
+	}
+	
+	/**
+	 * Doubles the size of the table and rehashes every n-gram
+	 */
+	private void grow()
+	{
+		long[] keys = m_lKeys;
+		int[] first = m_iFirst;
+		int[] last = m_iLast;
+		int[] count = m_iCount;
+		
+		m_lKeys = new long[keys.length << 1];
+		m_iFirst = new int[keys.length << 1];
+		m_iLast = new int[keys.length << 1];
+		m_iCount = new int[keys.length << 1];
+		
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (keys[i] != EMPTY)
+			{
+				int slot = findSlot(m_lKeys, keys[i]);
+				m_lKeys[slot] = keys[i];
+				m_iFirst[slot] = first[i];
+				m_iLast[slot] = last[i];
+				m_iCount[slot] = count[i];
+			}
+		}
+	}
+	
+	/**
+	 * Finds the slot of a key by linear probing
+	 * 
+	 * @return	The slot holding the key or the empty slot it should go to
+	 */
+	private static int findSlot(long[] keys, long key)
+	{
+		int mask = keys.length - 1;
+		
+		// Mix the bits, base 26 hashes of similar n-grams differ mostly in the low bits
+		long mixed = key * 0x9E3779B97F4A7C15L;
+		int slot = (int) (mixed ^ (mixed >>> 32)) & mask;
+		
+		while (keys[slot] != EMPTY && keys[slot] != key)
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.nio.ByteBuffer;
+
+import cryptography.Util;
+
+/**
+ * Engine for ciphers whose key stream repeats, e.g. Vigenere and Beaufort. Every
+ * key position has a substitution alphabet expanded into a 256 byte lookup, so a
+ * byte is transformed by a single table access whether it's a letter or not.
+ * Plain shift ciphers go through the SWAR kernel instead when it's selected.
+ * Letters are lowercased unless the engine is told to preserve case.
+ * Keeps no state between blocks, so it can be shared between streams and threads.
+ *
+ * @author Hristo Hristov
+ */
+class PeriodicEngine implements CipherEngine
+{
+	// Substitute of each letter indexed by key position, then letter
+	private final byte[][] m_alphabets;
+	
+	// Output byte indexed by key position, then input byte
+	private final byte[][] m_rows;
+	
+	// Shift of each key position if the cipher is a plain shift cipher, null otherwise
+	private final int[] m_shifts;
+	
+	// Shifts of 8 consecutive letters starting at each key position, for the SWAR kernel
+	private final long[] m_keyWords;
+	private final boolean m_bPreserveCase;
+	
+	private PeriodicEngine(byte[][] alphabets, int[] shifts, boolean preserveCase)
+	{
+		m_alphabets = alphabets;
+		m_shifts = shifts;
+		m_keyWords = shifts == null ? null : ShiftKernel.expandKey(shifts);
+		m_bPreserveCase = preserveCase;
+		m_rows = new byte[alphabets.length][];
+		
+		for (int k = 0; k < alphabets.length; k++)
+		{
+			m_rows[k] = TabulaRecta.expand(alphabets[k], preserveCase);
+		}
+	}
+	
+	/**
+	 * Creates an engine shifting letters by a repeating set of shift values, e.g. Vigenere
+	 * 
+	 * @param shifts	Shift values in the range [0,25] returned by CipherStream.normalizeShifts()
+	 * @return			The engine, lowercasing every letter
+	 */
+	static PeriodicEngine ofShifts(int[] shifts)
+	{
+		return ofShifts(shifts, false);
+	}
+	
+	/**
+	 * Creates an engine shifting letters by a repeating set of shift values, e.g. Vigenere
+	 * 
+	 * @param shifts		Shift values in the range [0,25] returned by CipherStream.normalizeShifts()
+	 * @param preserveCase	If true, capitals stay capitals, otherwise they're lowercased
+	 * @return				The engine
+	 */
+	static PeriodicEngine ofShifts(int[] shifts, boolean preserveCase)
+	{
+		byte[][] alphabets = new byte[shifts.length][];
+		
+		for (int k = 0; k < shifts.length; k++)
+		{
+			alphabets[k] = TabulaRecta.TABLE[ shifts[k] ];
+		}
+		return new PeriodicEngine(alphabets, shifts.clone(), preserveCase);
+	}
+	
+	/**
+	 * Creates a Beaufort engine, which substitutes letter p by k - p. Applying it twice
+	 * gives the letter back, so the same engine encrypts and decrypts.
+	 * 
+	 * @param key				Key letters in the range [0,25]
+	 * @param preserveCase	If true, capitals stay capitals, otherwise they're lowercased
+	 * @return				The engine
+	 */
+	static PeriodicEngine ofBeaufort(int[] key, boolean preserveCase)
+	{
+		byte[][] alphabets = new byte[key.length][Util.ALPHABET_SIZE];
+		
+		for (int k = 0; k < key.length; k++)
+		{
+			for (int l = 0; l < Util.ALPHABET_SIZE; l++)
+			{
+				alphabets[k][l] = TabulaRecta.TABLE[ key[k] ][ (Util.ALPHABET_SIZE - l) % Util.ALPHABET_SIZE ];
+			}
+		}
+		return new PeriodicEngine(alphabets, null, preserveCase);
+	}
+	
+	@Override
+	public int getPeriod()
+	{
+		return m_alphabets.length;
+	}
+	
+	@Override
+	public long transform(ByteBuffer source, ByteBuffer target, long keyPos)
+	{
+		int k = (int) (keyPos % m_alphabets.length);
+		
+		if (m_shifts != null && ShiftKernel.SELECTED == ShiftKernel.Type.Swar)
+		{
+			return ShiftKernel.shift(source, target, m_shifts, m_keyWords, k, m_bPreserveCase);
+		}
+		
+		int limit = source.limit();
+		for (int i = 0; i < limit; i++)
+		{
+			int b = source.get(i) & 0xFF;
+			target.put(i, m_rows[k][b]);
+			
+			// Move on to the next key position on letters only, without branching
+			k += (TabulaRecta.LETTERS[b] >> 7) + 1;
+			k = k == m_alphabets.length ? 0 : k;
+		}
+		return k;
+	}
+	
+	@Override
+	public long transform(char[] block, int from, int to, long keyPos)
+	{
+		int k = (int) (keyPos % m_alphabets.length);
+		
+		for (int i = from; i < to; i++)
+		{
+			int ch = m_bPreserveCase ? block[i] : Character.toLowerCase((int) block[i]);
+			
+			// Only reached when preserving case, any other capital has been lowercased already
+			int base = 'a';
+			if (ch >= 'A' && ch <= 'Z')
+			{
+				ch += 'a' - 'A';
+				base = 'A';
+			}
+			
+			// Keep numbers, spaces, punc. intact
+			if (ch < 'a' || ch > 'z')
+			{
+				block[i] = (char) ch;
+				continue;
+			}
+			
+			block[i] = (char) (base + m_alphabets[k][ch - 'a']);
+			if (++k == m_alphabets.length)
+			{
+				k = 0;
+			}
+		}
+		return k;
+	}
+}
@@ -0,0 +1,279 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import cryptography.Text;
+import cryptography.Util;
+
+/**
+ * A language profile of a big chunk of text, i.e. its letter counts, index of
+ * coincidence and optionally its n-gram counts. Saved in a compact binary format,
+ * so the reference sample only has to be read and counted once.
+ *
+ * File layout (big-endian):
+ * magic, version, total letters, index of coincidence, 26 letter counts,
+ * longest n-gram kept (0 if none), then the n-gram counts for n = 2 up to it.
+ *
+ * @author Hristo Hristov
+ */
+class Profile
+{
+	// "VGPF"
+	private static final int MAGIC = 0x56475046;
+	private static final int VERSION = 1;
+	
+	// Longest n-grams counted, 26^4 quadgrams still fit in a couple of MB
+	static final int MAX_NGRAM_LENGTH = 4;
+	
+	private final Text m_sample;
+	private final float m_fIndexOfCoincidence;
+	
+	// N-gram counts indexed by the n-gram's value in base 26, null if not kept
+	private final int[][] m_iNGramCounts;
+	
+	private Profile(Text sample, float indexOfCoincidence, int[][] nGramCounts)
+	{
+		m_sample = sample;
+		m_fIndexOfCoincidence = indexOfCoincidence;
+		m_iNGramCounts = nGramCounts;
+	}
+	
+	/**
+	 * Builds a profile out of a sample
+	 * 
+	 * @param sample		A big chunk of English text
+	 * @param withNGrams	Count n-grams as well, requires the sample's contents to be kept
+	 * @return				The profile of the sample
+	 */
+	static Profile build(Text sample, boolean withNGrams)
+	{
+		int[][] nGramCounts = null;
+		
+		if (withNGrams)
+		{
+			CharSequence letters = sample.getContents();
+			if (letters == null)
+			{
+				throw new IllegalArgumentException("N-grams need the contents of the sample to be kept");
+			}
+			nGramCounts = countNGrams(letters);
+		}
+		return new Profile(sample, sample.getIndexOfCoincidence(), nGramCounts);
+	}
+	
+	/**
+	 * Loads a cached profile if it's up to date, otherwise builds it from the sample and caches it
+	 * 
+	 * @param sampleFile	A big chunk of English text
+	 * @param profileFile	File the profile is cached at
+	 * @return				The profile of the sample
+	 */
+	static Profile loadOrBuild(File sampleFile, File profileFile)
+	{
+		if (profileFile.exists() && profileFile.lastModified() >= sampleFile.lastModified())
+		{
+			try
+			{
+				return load(profileFile);
+			}
+			catch (IOException e)
+			{
+				// Fall back to building it again
+				e.printStackTrace();
+			}
+		}
+		
+		Profile profile = build(new Text(sampleFile, true), true);
+		try
+		{
+			profile.save(profileFile);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		return profile;
+	}
+	
+	/**
+	 * Loads a profile saved by save()
+	 * 
+	 * @param profileFile	File to load from
+	 * @return				The loaded profile
+	 * @throws IOException
+	 */
+	static Profile load(File profileFile) throws IOException
+	{
+		System.out.printf("Loading profile \"%s\"... ", profileFile.getPath());
+		
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(profileFile.toPath(), StandardOpenOption.READ))
+		{
+			buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) != -1)
+			{
+				// Keep reading until the whole file is in
+			}
+			buffer.flip();
+		}
+		
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+		{
+			throw new IOException("Not a language profile: " + profileFile.getPath());
+		}
+		
+		try
+		{
+			buffer.getInt(); // total letters, implied by the letter counts
+			float indexOfCoincidence = buffer.getFloat();
+			
+			int[] letterCounts = new int[Util.ALPHABET_SIZE];
+			buffer.asIntBuffer().get(letterCounts);
+			buffer.position(buffer.position() + letterCounts.length * Integer.BYTES);
+			
+			int maxLength = buffer.getInt();
+			int[][] nGramCounts = null;
+			
+			if (maxLength < 0 || maxLength > MAX_NGRAM_LENGTH)
+			{
+				throw new IOException("Unsupported n-gram length in profile: " + maxLength);
+			}
+			
+			if (maxLength > 0)
+			{
+				nGramCounts = new int[maxLength + 1][];
+				for (int n = 2; n <= maxLength; n++)
+				{
+					nGramCounts[n] = new int[(int) Math.pow(Util.ALPHABET_SIZE, n)];
+					buffer.asIntBuffer().get(nGramCounts[n]);
+					buffer.position(buffer.position() + nGramCounts[n].length * Integer.BYTES);
+				}
+			}
+			
+			System.out.println("finished loading profile.");
+			return new Profile(new Text(letterCounts), indexOfCoincidence, nGramCounts);
+		}
+		catch (RuntimeException e)
+		{
+			throw new IOException("Corrupt language profile: " + profileFile.getPath(), e);
+		}
+	}
+	
+	/**
+	 * Saves the profile in its binary format
+	 * 
+	 * @param profileFile	File to save to
+	 * @throws IOException
+	 */
+	void save(File profileFile) throws IOException
+	{
+		System.out.printf("Saving profile \"%s\"... ", profileFile.getPath());
+		
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(profileFile), CipherStream.BLOCK_SIZE)))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(m_sample.getTotalLetters());
+			out.writeFloat(m_fIndexOfCoincidence);
+			
+			for (int l = 0; l < Util.ALPHABET_SIZE; l++)
+			{
+				out.writeInt(m_sample.getLetterCount(l));
+			}
+			
+			int maxLength = m_iNGramCounts == null ? 0 : m_iNGramCounts.length - 1;
+			out.writeInt(maxLength);
+			
+			for (int n = 2; n <= maxLength; n++)
+			{
+				for (int count : m_iNGramCounts[n])
+				{
+					out.writeInt(count);
+				}
+			}
+		}
+		System.out.println("finished saving profile.");
+	}
+	
+	/**
+	 * @return	The letter counts of the sample
+	 */
+	Text getSample()
+	{
+		return m_sample;
+	}
+	
+	/**
+	 * @return	The index of coincidence of the sample
+	 */
+	float getIndexOfCoincidence()
+	{
+		return m_fIndexOfCoincidence;
+	}
+	
+	/**
+	 * @return	True if n-gram counts were kept
+	 */
+	boolean hasNGrams()
+	{
+		return m_iNGramCounts != null;
+	}
+	
+	/**
+	 * Returns the counts of all n-grams of a given length
+	 * 
+	 * @param n		Length of the n-grams, [2,MAX_NGRAM_LENGTH]
+	 * @return		Counts indexed by the n-gram's value in base 26, e.g. "ab" is 0 * 26 + 1
+	 */
+	int[] getNGramCounts(int n)
+	{
+		if (m_iNGramCounts == null || n < 2 || n >= m_iNGramCounts.length)
+		{
+			throw new IllegalArgumentException("No " + n + "-gram counts in this profile");
+		}
+		return m_iNGramCounts[ n ];
+	}
+	
+	/**
+	 * Counts the n-grams of length [2,MAX_NGRAM_LENGTH] in a single pass
+	 * 
+	 * @param letters	Letters in the range [a,z]
+	 * @return			N-gram counts indexed by length, then by value in base 26
+	 */
+	private static int[][] countNGrams(CharSequence letters)
+	{
+		int[][] nGramCounts = new int[MAX_NGRAM_LENGTH + 1][];
+		int[] sizes = new int[MAX_NGRAM_LENGTH + 1];
+		
+		sizes[1] = Util.ALPHABET_SIZE;
+		for (int n = 2; n <= MAX_NGRAM_LENGTH; n++)
+		{
+			sizes[n] = sizes[n - 1] * Util.ALPHABET_SIZE;
+			nGramCounts[n] = new int[sizes[n]];
+		}
+		
+		// Value of the last MAX_NGRAM_LENGTH letters in base 26
+		int value = 0;
+		for (int i = 0; i < letters.length(); i++)
+		{
+			value = (value * Util.ALPHABET_SIZE + letters.charAt(i) - 'a') % sizes[MAX_NGRAM_LENGTH];
+			
+			for (int n = 2; n <= Math.min(i + 1, MAX_NGRAM_LENGTH); n++)
+			{
+				nGramCounts[n][value % sizes[n]]++;
+			}
+		}
+		return nGramCounts;
+	}
+}
@@ -0,0 +1,255 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import cryptography.Util;
+
+/**
+ * Measures how much a text looks like English by the log probabilities of its quadgrams.
+ * Used to refine a key found by frequency analysis, which often gets a few letters
+ * wrong on short ciphers since a single coset has too few letters to go by.
+ *
+ * @author Hristo Hristov
+ */
+class QuadgramScorer
+{
+	// Number of distinct quadgrams, 26^4
+	private static final int QUADGRAMS = Util.ALPHABET_SIZE * Util.ALPHABET_SIZE * Util.ALPHABET_SIZE * Util.ALPHABET_SIZE;
+	
+	// How far from the sample's score per quadgram towards that of random letters a decryption
+	// may get and still read as English. Text off the sample's topic scores well below the sample.
+	private static final float PLAUSIBLE_FRACTION = 0.45f;
+	
+	// Log probability of each quadgram indexed by its value in base 26
+	private final float[] m_fLogProbabilities = new float[QUADGRAMS];
+	
+	// Expected score per quadgram of text like the sample, i.e. the sum of p * log p
+	private final float m_fExpectedScore;
+	
+	// Expected score per quadgram of random letters, i.e. the mean of log p
+	private final float m_fRandomScore;
+	
+	/**
+	 * @param profile	Language profile with n-gram counts
+	 */
+	QuadgramScorer(Profile profile)
+	{
+		int[] counts = profile.getNGramCounts(4);
+		
+		long total = 0;
+		for (int count : counts)
+		{
+			total += count;
+		}
+		
+		// Quadgrams never seen in the sample get a probability well below any seen one
+		float floor = (float) Math.log10(0.01 / Math.max(1, total));
+		double expected = 0;
+		double random = 0;
+		for (int q = 0; q < QUADGRAMS; q++)
+		{
+			m_fLogProbabilities[q] = counts[q] > 0 ? (float) Math.log10((double) counts[q] / total) : floor;
+			expected += counts[q] > 0 ? (double) counts[q] / total * m_fLogProbabilities[q] : 0;
+			random += m_fLogProbabilities[q];
+		}
+		m_fExpectedScore = (float) expected;
+		m_fRandomScore = (float) (random / QUADGRAMS);
+	}
+	
+	/**
+	 * Tells whether a decryption reads as English. A wrong key letter garbles the quadgrams
+	 * around every letter of its coset, which drags the score towards that of random letters.
+	 * 
+	 * @param score		Score of the decryption as returned by score()
+	 * @param letters	Number of letters decrypted
+	 * @return			True if the decryption scores nearer per quadgram to the sample than to random letters
+	 */
+	boolean isPlausible(float score, int letters)
+	{
+		float threshold = m_fExpectedScore + PLAUSIBLE_FRACTION * (m_fRandomScore - m_fExpectedScore);
+		return letters > 3 && score / (letters - 3) >= threshold;
+	}
+	
+	/**
+	 * @param letters	Letters in the range [a,z]
+	 * @return			Sum of the log probabilities of every quadgram, the higher the more English
+	 */
+	float score(CharSequence letters)
+	{
+		float score = 0;
+		int value = 0;
+		
+		for (int i = 0; i < letters.length(); i++)
+		{
+			value = (value * Util.ALPHABET_SIZE + letters.charAt(i) - 'a') % QUADGRAMS;
+			if (i >= 3)
+			{
+				score += m_fLogProbabilities[value];
+			}
+		}
+		return score;
+	}
+	
+	/**
+	 * Refines a Vigenere key by hill climbing, see climb(). Changing a key letter
+	 * only changes the quadgrams touching its coset, so only those get rescored.
+	 * 
+	 * @param cipher	Cipher text, letters in the range [a,z]
+	 * @param key		Key to start from, e.g. found by Vigenere.cryptAnalyse()
+	 * @return			The refined key
+	 */
+	String refine(CharSequence cipher, String key)
+	{
+		System.out.printf("Refining key \"%s\" by quadgram scoring... ", key);
+		
+		int keyLength = key.length();
+		int[] shifts = Vigenere.breakDownKey(key);
+		
+		// Decrypt once, afterwards only one coset at a time gets decrypted again
+		byte[] cipherLetters = toLetters(cipher);
+		byte[] plainLetters = new byte[cipherLetters.length];
+		for (int k = 0; k < keyLength; k++)
+		{
+			decryptCoset(cipherLetters, plainLetters, k, keyLength, shifts[k]);
+		}
+		int passes = climb(cipherLetters, plainLetters, shifts, keyLength);
+		
+		StringBuilder refined = new StringBuilder(keyLength);
+		for (int shift : shifts)
+		{
+			refined.append((char) ('a' + shift));
+		}
+		
+		System.out.printf("finished after %d passes, key: %s\n", passes, refined);
+		return refined.toString();
+	}
+	
+	/**
+	 * @param plainLetters	Letters in the range [0,25]
+	 * @return				Sum of the log probabilities of every quadgram
+	 */
+	float score(byte[] plainLetters)
+	{
+		float score = 0;
+		
+		for (int q = 0; q + 3 < plainLetters.length; q++)
+		{
+			int value = ((plainLetters[q] * Util.ALPHABET_SIZE + plainLetters[q + 1]) * Util.ALPHABET_SIZE
+					+ plainLetters[q + 2]) * Util.ALPHABET_SIZE + plainLetters[q + 3];
+			score += m_fLogProbabilities[value];
+		}
+		return score;
+	}
+	
+	/**
+	 * Hill climbs a key in place. Each key letter in turn is set to the shift that scores
+	 * best while the others stay put, until a whole pass changes nothing.
+	 * 
+	 * @param cipherLetters		Cipher letters in the range [0,25]
+	 * @param plainLetters		Letters decrypted with the key, kept in sync with it
+	 * @param shifts			Shifts of the key to refine
+	 * @param keyLength			Number of shifts in use
+	 * @return					Number of passes made
+	 */
+	int climb(byte[] cipherLetters, byte[] plainLetters, int[] shifts, int keyLength)
+	{
+		int passes = 0;
+		boolean improved = cipherLetters.length >= 4;
+		
+		while (improved)
+		{
+			improved = false;
+			passes++;
+			
+			for (int k = 0; k < keyLength; k++)
+			{
+				int bestShift = shifts[k];
+				float bestScore = scoreCoset(plainLetters, k, keyLength);
+				
+				for (int shift = 0; shift < Util.ALPHABET_SIZE; shift++)
+				{
+					if (shift == shifts[k])
+						continue;
+					
+					decryptCoset(cipherLetters, plainLetters, k, keyLength, shift);
+					float score = scoreCoset(plainLetters, k, keyLength);
+					if (score > bestScore)
+					{
+						bestScore = score;
+						bestShift = shift;
+					}
+				}
+				
+				decryptCoset(cipherLetters, plainLetters, k, keyLength, bestShift);
+				if (bestShift != shifts[k])
+				{
+					shifts[k] = bestShift;
+					improved = true;
+				}
+			}
+		}
+		return passes;
+	}
+	
+	/**
+	 * @param letters	Letters in the range [a,z]
+	 * @return			The letters in the range [0,25]
+	 */
+	static byte[] toLetters(CharSequence letters)
+	{
+		byte[] values = new byte[letters.length()];
+		
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = (byte) (letters.charAt(i) - 'a');
+		}
+		return values;
+	}
+	
+	/**
+	 * Decrypts every letter of a coset with a shift
+	 * 
+	 * @param cipherLetters		Cipher letters in the range [0,25]
+	 * @param plainLetters		Decrypted letters to update
+	 * @param offset			Index of the first letter of the coset
+	 * @param keyLength			Distance between two letters of the coset
+	 * @param shift				Shift to decrypt with
+	 */
+	static void decryptCoset(byte[] cipherLetters, byte[] plainLetters, int offset, int keyLength, int shift)
+	{
+		for (int i = offset; i < cipherLetters.length; i += keyLength)
+		{
+			int letter = cipherLetters[i] - shift;
+			plainLetters[i] = (byte) (letter < 0 ? letter + Util.ALPHABET_SIZE : letter);
+		}
+	}
+	
+	/**
+	 * Sums the log probabilities of the quadgrams holding at least one letter of a coset
+	 * 
+	 * @param plainLetters	Decrypted letters in the range [0,25]
+	 * @param offset		Index of the first letter of the coset
+	 * @param keyLength		Distance between two letters of the coset
+	 * @return				The partial score
+	 */
+	float scoreCoset(byte[] plainLetters, int offset, int keyLength)
+	{
+		float score = 0;
+		int last = plainLetters.length - 4;
+		
+		// Start of the next quadgram not scored yet, keys shorter than 4 touch overlapping quadgrams
+		int next = 0;
+		for (int i = offset; i < plainLetters.length; i += keyLength)
+		{
+			for (int q = Math.max(next, i - 3); q <= Math.min(i, last); q++)
+			{
+				int value = ((plainLetters[q] * Util.ALPHABET_SIZE + plainLetters[q + 1]) * Util.ALPHABET_SIZE
+						+ plainLetters[q + 2]) * Util.ALPHABET_SIZE + plainLetters[q + 3];
+				score += m_fLogProbabilities[value];
+			}
+			next = i + 1;
+		}
+		return score;
+	}
+}
@@ -0,0 +1,292 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import cryptography.Util;
+
+/**
+ * Kernels used to shift and count the ASCII letters of byte blocks.
+ * The SWAR kernel treats a long as 8 byte lanes and shifts 8 bytes per step
+ * without branching on every byte, the scalar kernel goes byte by byte.
+ * The kernel is picked at startup via -Dcryptography.kernel=swar|scalar
+ *
+ * @author Hristo Hristov
+ */
+class ShiftKernel
+{
+	// System property used to select the kernel
+	static final String KERNEL_PROPERTY = "cryptography.kernel";
+	
+	enum Type
+	{
+		Scalar,
+		Swar
+	}
+	
+	// The kernel in use, SWAR unless told otherwise
+	static final Type SELECTED = "scalar".equalsIgnoreCase(System.getProperty(KERNEL_PROPERTY))
+			? Type.Scalar : Type.Swar;
+	
+	// Byte lane masks
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGH = 0x8080808080808080L;
+	private static final long CASE = 0x2020202020202020L;
+	
+	/**
+	 * Shifts the ASCII letters of a byte block, all other bytes are kept intact
+	 * 
+	 * @param source		Bytes to shift, from index 0 up to the limit
+	 * @param target		Bytes to store the result at, may be the source itself
+	 * @param shifts		Shift values in the range [0,25] returned by CipherStream.normalizeShifts()
+	 * @param keyWords		The shifts as returned by expandKey(), expanded once per key rather than per block
+	 * @param keyPos		Position within the key to start at
+	 * @param preserveCase	If true, capitals stay capitals, otherwise they're lowercased
+	 * @return				Position within the key after the block
+	 */
+	static int shift(ByteBuffer source, ByteBuffer target, int[] shifts, long[] keyWords, int keyPos,
+			boolean preserveCase)
+	{
+		if (SELECTED == Type.Swar)
+		{
+			return shiftSwar(source, target, shifts, keyWords, keyPos, preserveCase);
+		}
+		return shiftScalar(source, target, 0, source.limit(), shifts, keyPos, preserveCase);
+	}
+	
+	/**
+	 * Counts the ASCII letters of a byte block
+	 * 
+	 * @param block		Bytes to count, from index 0 up to the limit
+	 * @return			Number of letters in the block
+	 */
+	static long countLetters(ByteBuffer block)
+	{
+		if (SELECTED == Type.Swar)
+		{
+			return countLettersSwar(block);
+		}
+		return countLettersScalar(block, 0, block.limit());
+	}
+	
+	/**
+	 * Counts the leading ASCII bytes of a byte block 8 bytes at a time
+	 * 
+	 * @param block		Bytes to check, from the position up to the limit
+	 * @return			Index of the first non-ASCII byte, the limit if there's none
+	 */
+	static int asciiLength(ByteBuffer block)
+	{
+		int i = block.position();
+		int end = block.limit() - 7;
+		
+		ByteBuffer in = block.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		for (; i < end; i += 8)
+		{
+			long high = in.getLong(i) & HIGH;
+			if (high != 0)
+			{
+				return i + (Long.numberOfTrailingZeros(high) >>> 3);
+			}
+		}
+		
+		for (; i < block.limit(); i++)
+		{
+			if (block.get(i) < 0)
+				return i;
+		}
+		return i;
+	}
+	
+	/**
+	 * Shifts a range of a byte block one byte at a time
+	 */
+	static int shiftScalar(ByteBuffer source, ByteBuffer target, int from, int to, int[] shifts, int keyPos,
+			boolean preserveCase)
+	{
+		for (int i = from; i < to; i++)
+		{
+			int ch = source.get(i);
+			
+			// Capitals are shifted as lowercase and raised back afterwards if need be
+			int capital = 0;
+			if (ch >= 'A' && ch <= 'Z')
+			{
+				ch += 'a' - 'A';
+				capital = preserveCase ? 'A' - 'a' : 0;
+			}
+			
+			// Keep numbers, spaces, punc. and non-ASCII bytes intact
+			if (ch < 'a' || ch > 'z')
+			{
+				target.put(i, (byte) ch);
+				continue;
+			}
+			
+			ch += shifts[keyPos];
+			if (ch > 'z')
+			{
+				ch -= Util.ALPHABET_SIZE;
+			}
+			target.put(i, (byte) (ch + capital));
+			
+			if (++keyPos == shifts.length)
+			{
+				keyPos = 0;
+			}
+		}
+		return keyPos;
+	}
+	
+	/**
+	 * Counts the letters in a range of a byte block one byte at a time
+	 */
+	static long countLettersScalar(ByteBuffer block, int from, int to)
+	{
+		long letters = 0;
+		
+		for (int i = from; i < to; i++)
+		{
+			// Lowercases capitals, anything else can't end up in [a,z]
+			int ch = block.get(i) | 0x20;
+			
+			if (ch >= 'a' && ch <= 'z')
+			{
+				letters++;
+			}
+		}
+		return letters;
+	}
+	
+	/**
+	 * Shifts a byte block 8 bytes at a time. Words made of letters only take the
+	 * shifts straight from the key expanded into 8 lane patterns, words mixing
+	 * letters with other bytes get their shifts placed into the letter lanes.
+	 */
+	static int shiftSwar(ByteBuffer source, ByteBuffer target, int[] shifts, long[] keyWords, int keyPos,
+			boolean preserveCase)
+	{
+		// Byte k of a word sits at bits 8k..8k+7
+		ByteBuffer in = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer out = target.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		
+		int length = source.limit();
+		int end = length & ~7;
+		
+		int advance = 8 % shifts.length;
+		
+		for (int i = 0; i < end; i += 8)
+		{
+			long word = in.getLong(i);
+			long letters = letterLanes(word);
+			
+			// Nothing to shift
+			if (letters == 0)
+			{
+				out.putLong(i, word);
+				continue;
+			}
+			
+			long add;
+			if (letters == HIGH)
+			{
+				add = keyWords[keyPos];
+				keyPos += advance;
+				if (keyPos >= shifts.length)
+				{
+					keyPos -= shifts.length;
+				}
+			}
+			else
+			{
+				// Place the next shifts into the letter lanes only
+				add = 0;
+				for (long bits = letters; bits != 0; bits &= bits - 1)
+				{
+					add |= (long) shifts[keyPos] << (Long.numberOfTrailingZeros(bits) - 7);
+					
+					if (++keyPos == shifts.length)
+					{
+						keyPos = 0;
+					}
+				}
+			}
+			
+			// Lowercase the letters and shift them, no lane can carry into the next
+			long mask = (letters >>> 7) * 0xFF;
+			long shifted = (word | (mask & CASE)) + add;
+			
+			// Wrap the lanes that went past 'z'
+			long wrap = ((shifted & mask) + ONES * (0x80 - 'z' - 1)) & letters;
+			shifted -= (wrap >>> 7) * Util.ALPHABET_SIZE;
+			
+			// Capitals have bit 5 clear, clearing it in their lanes again raises them back
+			if (preserveCase)
+			{
+				shifted ^= (letters & ~(word << 2)) >>> 2;
+			}
+			
+			out.putLong(i, shifted);
+		}
+		return shiftScalar(source, target, end, length, shifts, keyPos, preserveCase);
+	}
+	
+	/**
+	 * Counts the letters of a byte block 8 bytes at a time
+	 */
+	static long countLettersSwar(ByteBuffer block)
+	{
+		ByteBuffer in = block.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		
+		int length = block.limit();
+		int end = length & ~7;
+		long letters = 0;
+		
+		for (int i = 0; i < end; i += 8)
+		{
+			letters += Long.bitCount(letterLanes(in.getLong(i)));
+		}
+		return letters + countLettersScalar(block, end, length);
+	}
+	
+	/**
+	 * Finds the lanes of a word holding an ASCII letter
+	 * 
+	 * @param word	8 bytes of text
+	 * @return		A word with the high bit set in every letter lane
+	 */
+	static long letterLanes(long word)
+	{
+		// Drop the high bits so the additions below can't carry between lanes
+		long lower = (word & ~HIGH) | CASE;
+		
+		long atLeastA = lower + ONES * (0x80 - 'a');
+		long pastZ = lower + ONES * (0x80 - 'z' - 1);
+		
+		// Bytes with the high bit set aren't ASCII
+		return atLeastA & ~pastZ & ~word & HIGH;
+	}
+	
+	/**
+	 * Expands a key into words of 8 consecutive shifts, one for each key position
+	 * 
+	 * @param shifts	Shift values in the range [0,25]
+	 * @return			Shift patterns indexed by key position
+	 */
+	static long[] expandKey(int[] shifts)
+	{
+		long[] keyWords = new long[shifts.length];
+		
+		for (int p = 0; p < shifts.length; p++)
+		{
+			for (int k = 0; k < 8; k++)
+			{
+				keyWords[p] |= (long) shifts[(p + k) % shifts.length] << (8 * k);
+			}
+		}
+		return keyWords;
+	}
+}
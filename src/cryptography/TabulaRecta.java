@@ -0,0 +1,83 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import cryptography.Util;
+
+/**
+ * The tabula recta, i.e. every shifted alphabet in a 26x26 table, along with a
+ * byte lookup of ASCII letters. Lets the cipher engines substitute letters by
+ * indexing tables instead of shifting and wrapping around.
+ *
+ * @author Hristo Hristov
+ */
+class TabulaRecta
+{
+	// TABLE[k][l] is letter l shifted by k, both in the range [0,25]
+	static final byte[][] TABLE = new byte[Util.ALPHABET_SIZE][Util.ALPHABET_SIZE];
+	
+	// LETTERS[b] is the letter of an ASCII letter byte in the range [0,25], -1 for any other byte
+	static final byte[] LETTERS = new byte[256];
+	
+	static
+	{
+		for (int k = 0; k < Util.ALPHABET_SIZE; k++)
+		{
+			for (int l = 0; l < Util.ALPHABET_SIZE; l++)
+			{
+				TABLE[k][l] = (byte) ((l + k) % Util.ALPHABET_SIZE);
+			}
+		}
+		
+		for (int b = 0; b < LETTERS.length; b++)
+		{
+			LETTERS[b] = -1;
+		}
+		for (int l = 0; l < Util.ALPHABET_SIZE; l++)
+		{
+			LETTERS['a' + l] = (byte) l;
+			LETTERS['A' + l] = (byte) l;
+		}
+	}
+	
+	/**
+	 * @param k		Key letter in the range [0,25]
+	 * @param l		Plain letter in the range [0,25]
+	 * @return		The letter shifted forward by the key letter
+	 */
+	static int encipher(int k, int l)
+	{
+		return TABLE[ k ][ l ];
+	}
+	
+	/**
+	 * @param k		Key letter in the range [0,25]
+	 * @param l		Cipher letter in the range [0,25]
+	 * @return		The letter shifted back by the key letter
+	 */
+	static int decipher(int k, int l)
+	{
+		return TABLE[ (Util.ALPHABET_SIZE - k) % Util.ALPHABET_SIZE ][ l ];
+	}
+	
+	/**
+	 * Expands a substitution alphabet into a lookup of output bytes by input byte.
+	 * ASCII letters map to their substitute, any other byte to itself.
+	 * 
+	 * @param alphabet		Substitute of each letter in the range [0,25]
+	 * @param preserveCase	If true, capitals map to capitals, otherwise every letter maps to lowercase
+	 * @return				Output byte indexed by input byte
+	 */
+	static byte[] expand(byte[] alphabet, boolean preserveCase)
+	{
+		byte[] row = new byte[LETTERS.length];
+		
+		for (int b = 0; b < row.length; b++)
+		{
+			int base = preserveCase && b >= 'A' && b <= 'Z' ? 'A' : 'a';
+			row[b] = LETTERS[b] < 0 ? (byte) b : (byte) (base + alphabet[LETTERS[b]]);
+		}
+		return row;
+	}
+}
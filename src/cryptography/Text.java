@@ -21,12 +21,14 @@ import cryptography.Util;
 class Text
 {
 	static final String SAMPLE_FILEPATH = "D:\\DEC2.txt";
+	static final String SAMPLE_PROFILE_FILEPATH = "D:\\DEC2.profile";
 	
 	// Used to count the number of occurrences for each letter
 	private int[] m_iLetterCounter = new int[Util.ALPHABET_SIZE];
 	private int m_iTotalLetters = 0;
 	
 	// Used to keep the contents of a text file
+	private LetterBuffer m_letters;
 	private String m_strText;
 	
 	enum AnalysisType
@@ -37,13 +39,15 @@ class Text
 	
 	/**
 	 * Used to count the num of occurences for each letter in a string
-	 * @param str	String of text to iterate over
+	 * @param str	String of text to iterate over, e.g. a Coset of a cipher
 	 */
-	Text(String str)
+	Text(CharSequence str)
 	{
 		// For each character in the string
-		for (char ch : str.toCharArray())
+		for (int i = 0; i < str.length(); i++)
 		{
+			char ch = str.charAt(i);
+			
 			// Skip if it's a non-alphabetical character
 			if (ch < 'a' || ch > 'z')
 				continue;
@@ -54,37 +58,63 @@ class Text
 		m_iTotalLetters = str.length();
 	}
 	
+	/**
+	 * Used to restore a frequency analysis from letter counts, e.g. of a saved Profile
+	 * @param letterCounts	Num of occurrences of each letter
+	 */
+	Text(int[] letterCounts)
+	{
+		System.arraycopy(letterCounts, 0, m_iLetterCounter, 0, Util.ALPHABET_SIZE);
+		
+		for (int i : m_iLetterCounter)
+			m_iTotalLetters += i;
+	}
+	
 	/**
 	 * Used to count the num of occurrences for each letter in a text file
 	 * @param file			Text file to iterate over
-	 * @param keepContents	Keep the contents of the file in a member string
+	 * @param keepContents	Keep the letters of the file in a member buffer
 	 */
 	Text(File file, boolean keepContents)
 	{
 		try
 		{
 			System.out.printf("Opening \"%s\" for reading... ", file.getPath());
-			if (keepContents) m_strText = new String();
+			if (keepContents) m_letters = new LetterBuffer((int) Math.min(file.length(), Integer.MAX_VALUE - 8));
 			
 			// Open text file for reading
 			FileReader reader = new FileReader(file);
 			
-			// Go through every letter
-			int ch;
-			while ((ch = reader.read()) != -1)
+			// Go through the file a block at a time, a small file needs no more than its own size
+			char[] block = new char[(int) Math.max(1, Math.min(CipherStream.BLOCK_SIZE, file.length()))];
+			int length;
+			while ((length = reader.read(block)) != -1)
 			{
-				ch = Character.toLowerCase(ch);
-				
-				// Don't care about non-alpha chars
-				if (ch < 'a' || ch > 'z')
+				for (int i = 0; i < length; i++)
 				{
-					continue;
+					int ch = block[i];
+					
+					// Only non-ASCII chars need the full lowercasing
+					if (ch >= 'A' && ch <= 'Z')
+					{
+						ch += 'a' - 'A';
+					}
+					else if (ch > 0x7F)
+					{
+						ch = Character.toLowerCase(ch);
+					}
+					
+					// Don't care about non-alpha chars
+					if (ch < 'a' || ch > 'z')
+					{
+						continue;
+					}
+					
+					// Count occurrence of letter
+					m_iLetterCounter[ch - 'a']++;
+					
+					if (keepContents) m_letters.append(ch);
 				}
-				
-				// Count occurrence of letter
-				m_iLetterCounter[ch - 'a']++;
-				
-				if (keepContents) m_strText += Character.toString((char)ch);
 			}
 			
 			System.out.println("finished reading file.");
@@ -181,9 +211,21 @@ class Text
 	 */
 	String getText()
 	{
+		if (m_strText == null && m_letters != null)
+		{
+			m_strText = m_letters.toString();
+		}
 		return m_strText;
 	}
 	
+	/**
+	 * @return The letters collected during file read, without copying them
+	 */
+	CharSequence getContents()
+	{
+		return m_letters;
+	}
+	
 	/**
 	 * @return	The index of coincidence
 	 */
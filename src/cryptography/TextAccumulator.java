@@ -0,0 +1,211 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import cryptography.Util;
+
+/**
+ * Counts letters of a text as it arrives, e.g. from a pipe or a socket, without
+ * keeping the text. Along with the running counts and index of coincidence of
+ * everything seen so far, it keeps those of the last N letters only, so a change
+ * of cipher or key shows up as a jump of the window's index of coincidence.
+ * Only ASCII letters are counted, capitals as lowercase. Not thread-safe.
+ *
+ * @author Hristo Hristov
+ */
+class TextAccumulator
+{
+	// Running counts of everything seen so far
+	private final long[] m_lLetterCounter = new long[Util.ALPHABET_SIZE];
+	private long m_lTotalLetters = 0;
+	private long m_lSumOfSquares = 0;
+	
+	// The last letters seen, in a ring buffer, and their counts
+	private final byte[] m_window;
+	private final int[] m_iWindowCounter = new int[Util.ALPHABET_SIZE];
+	private int m_iWindowStart = 0;
+	private int m_iWindowLetters = 0;
+	private long m_lWindowSumOfSquares = 0;
+	
+	/**
+	 * @param windowSize	Number of letters in the sliding window
+	 */
+	TextAccumulator(int windowSize)
+	{
+		if (windowSize < 1)
+		{
+			throw new IllegalArgumentException("The window needs at least one letter, got " + windowSize);
+		}
+		m_window = new byte[windowSize];
+	}
+	
+	/**
+	 * Counts a chunk of bytes
+	 * 
+	 * @param bytes		Bytes to count
+	 * @param offset	Index of the first byte
+	 * @param length	Number of bytes
+	 */
+	void append(byte[] bytes, int offset, int length)
+	{
+		for (int i = offset; i < offset + length; i++)
+		{
+			append(bytes[i]);
+		}
+	}
+	
+	/**
+	 * Counts the remaining bytes of a buffer, leaving it consumed
+	 * 
+	 * @param buffer	Bytes to count
+	 */
+	void append(ByteBuffer buffer)
+	{
+		if (buffer.hasArray())
+		{
+			append(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			buffer.position(buffer.limit());
+			return;
+		}
+		
+		while (buffer.hasRemaining())
+		{
+			append(buffer.get());
+		}
+	}
+	
+	/**
+	 * Counts everything left in a stream, blocking until it ends
+	 * 
+	 * @param in	Stream to read
+	 * @return		Number of letters counted
+	 * @throws IOException
+	 */
+	long append(InputStream in) throws IOException
+	{
+		long before = m_lTotalLetters;
+		byte[] block = new byte[CipherStream.BLOCK_SIZE];
+		
+		int read;
+		while ((read = in.read(block)) != -1)
+		{
+			append(block, 0, read);
+		}
+		return m_lTotalLetters - before;
+	}
+	
+	/**
+	 * Counts a single byte, skipped unless it's an ASCII letter
+	 * 
+	 * @param b		Byte to count
+	 */
+	void append(byte b)
+	{
+		// Setting bit 5 lowercases ASCII capitals
+		int letter = (b | 0x20) - 'a';
+		if (letter < 0 || letter >= Util.ALPHABET_SIZE)
+			return;
+		
+		// (n + 1)^2 - n^2 = 2n + 1
+		m_lSumOfSquares += 2 * m_lLetterCounter[letter] + 1;
+		m_lLetterCounter[letter]++;
+		m_lTotalLetters++;
+		
+		if (m_iWindowLetters == m_window.length)
+		{
+			// Drop the oldest letter to make room
+			int oldest = m_window[m_iWindowStart];
+			m_lWindowSumOfSquares -= 2 * m_iWindowCounter[oldest] - 1;
+			m_iWindowCounter[oldest]--;
+			
+			m_window[m_iWindowStart] = (byte) letter;
+			m_iWindowStart = (m_iWindowStart + 1) % m_window.length;
+		}
+		else
+		{
+			m_window[(m_iWindowStart + m_iWindowLetters) % m_window.length] = (byte) letter;
+			m_iWindowLetters++;
+		}
+		m_lWindowSumOfSquares += 2 * m_iWindowCounter[letter] + 1;
+		m_iWindowCounter[letter]++;
+	}
+	
+	/**
+	 * @return	Total number of letters counted so far
+	 */
+	long getTotalLetters()
+	{
+		return m_lTotalLetters;
+	}
+	
+	/**
+	 * @param x		Letter in the range [0,25]
+	 * @return		Num of occurrences of the letter so far
+	 */
+	long getLetterCount(int x)
+	{
+		return m_lLetterCounter[ x ];
+	}
+	
+	/**
+	 * @return	The index of coincidence of everything counted so far, same as Text's
+	 */
+	float getIndexOfCoincidence()
+	{
+		return indexOfCoincidence(m_lSumOfSquares, m_lTotalLetters);
+	}
+	
+	/**
+	 * @return	Number of letters in the window, less than its size until it fills up
+	 */
+	int getWindowLetters()
+	{
+		return m_iWindowLetters;
+	}
+	
+	/**
+	 * @param x		Letter in the range [0,25]
+	 * @return		Num of occurrences of the letter in the window
+	 */
+	int getWindowLetterCount(int x)
+	{
+		return m_iWindowCounter[ x ];
+	}
+	
+	/**
+	 * @return	The index of coincidence of the letters in the window
+	 */
+	float getWindowIndexOfCoincidence()
+	{
+		return indexOfCoincidence(m_lWindowSumOfSquares, m_iWindowLetters);
+	}
+	
+	/**
+	 * Takes a snapshot of the counts so far, e.g. to cryptanalyse them
+	 * 
+	 * @return	A frequency analysis of everything counted so far
+	 */
+	Text toText()
+	{
+		int[] letterCounts = new int[Util.ALPHABET_SIZE];
+		
+		for (int l = 0; l < Util.ALPHABET_SIZE; l++)
+		{
+			letterCounts[l] = Math.toIntExact(m_lLetterCounter[l]);
+		}
+		return new Text(letterCounts);
+	}
+	
+	/**
+	 * @return	Sum of the squared frequencies, i.e. sum of n^2 over total^2
+	 */
+	private static float indexOfCoincidence(long sumOfSquares, long total)
+	{
+		return total == 0 ? 0.0f : (float) ((double) sumOfSquares / ((double) total * total));
+	}
+}
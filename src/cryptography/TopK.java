@@ -0,0 +1,117 @@
+/**
+ * Package to encapsulate cryptography exercises
+ */
+package cryptography;
+
+/**
+ * Keeps the k best of a stream of scored candidates, e.g. key lengths or shift values,
+ * in primitive arrays sorted best first. Offering a candidate is an insertion into
+ * at most k slots and never allocates, so a single instance can be cleared and reused.
+ * Candidates scoring the same keep the order they were offered in.
+ *
+ * @author Hristo Hristov
+ */
+class TopK
+{
+	private final int[] m_iIds;
+	private final float[] m_fScores;
+	private int m_iSize = 0;
+	
+	/**
+	 * @param k		Number of candidates to keep
+	 */
+	TopK(int k)
+	{
+		if (k < 1)
+		{
+			throw new IllegalArgumentException("At least one candidate has to be kept, got " + k);
+		}
+		m_iIds = new int[k];
+		m_fScores = new float[k];
+	}
+	
+	/**
+	 * Offers a candidate, kept if it beats the worst one kept so far or there's still room
+	 * 
+	 * @param id		Candidate, e.g. a key length
+	 * @param score		How good the candidate is, the higher the better
+	 * @return			True if the candidate was kept
+	 */
+	boolean offer(int id, float score)
+	{
+		int rank = m_iSize;
+		while (rank > 0 && score > m_fScores[rank - 1])
+		{
+			rank--;
+		}
+		if (rank == m_iIds.length)
+			return false;
+		
+		// Move the worse ones down a slot, dropping the last one if full
+		int last = Math.min(m_iSize, m_iIds.length - 1);
+		System.arraycopy(m_iIds, rank, m_iIds, rank + 1, last - rank);
+		System.arraycopy(m_fScores, rank, m_fScores, rank + 1, last - rank);
+		m_iIds[rank] = id;
+		m_fScores[rank] = score;
+		
+		if (m_iSize < m_iIds.length)
+		{
+			m_iSize++;
+		}
+		return true;
+	}
+	
+	/**
+	 * Forgets every candidate
+	 */
+	void clear()
+	{
+		m_iSize = 0;
+	}
+	
+	/**
+	 * @return	Number of candidates kept, at most k
+	 */
+	int size()
+	{
+		return m_iSize;
+	}
+	
+	/**
+	 * @param rank	Rank in the range [0,size), 0 being the best
+	 * @return		The candidate at that rank
+	 */
+	int getId(int rank)
+	{
+		checkRank(rank);
+		return m_iIds[ rank ];
+	}
+	
+	/**
+	 * @param rank	Rank in the range [0,size), 0 being the best
+	 * @return		The score of the candidate at that rank
+	 */
+	float getScore(int rank)
+	{
+		checkRank(rank);
+		return m_fScores[ rank ];
+	}
+	
+	/**
+	 * @return	The candidates kept, best first
+	 */
+	int[] getIds()
+	{
+		int[] ids = new int[m_iSize];
+		System.arraycopy(m_iIds, 0, ids, 0, m_iSize);
+		return ids;
+	}
+	
+	private void checkRank(int rank)
+	{
+		if (rank < 0 || rank >= m_iSize)
+		{
+			throw new IndexOutOfBoundsException(String.format("Rank %d out of %d candidates", rank, m_iSize));
+		}
+	}
+}
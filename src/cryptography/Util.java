@@ -10,6 +10,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
 
 /**
  * A wrapper for utility functions used throughout cryptography tutorials.
@@ -21,6 +22,9 @@ class Util
 	// The English alphabet consists of 26 letters
 	static final int ALPHABET_SIZE = 26;
 	
+	// Iterations of a long running loop between checks for an interrupt, a power of 2
+	static final int INTERRUPT_CHECK_INTERVAL = 1 << 16;
+	
 	/**
 	 * Calculates a percentage
 	 * @return (amount/total) * 100
@@ -30,6 +34,15 @@ class Util
 		return (float) amount / (float) total * 100.0f;
 	}
 	
+	/**
+	 * Calculates a percentage of amounts too big for an int
+	 * @return (amount/total) * 100
+	 */
+	static float getPercentage(long amount, long total)
+	{
+		return (float) amount / (float) total * 100.0f;
+	}
+	
 	/**
 	 * A synonym for getPercentage();
 	 */
@@ -38,6 +51,19 @@ class Util
 		return getPercentage(amount, total);
 	}
 	
+	/**
+	 * Gives up a long running analysis once the thread it runs for gets interrupted, e.g.
+	 * by KeyLengthEstimator cancelling the methods it no longer needs. The flag stays set.
+	 * 
+	 * @param thread	Thread the analysis runs for, not necessarily the current one
+	 * @throws CancellationException	If the thread got interrupted
+	 */
+	static void checkInterrupted(Thread thread)
+	{
+		if (thread.isInterrupted())
+			throw new CancellationException("Interrupted");
+	}
+	
 	/**
 	 * @param letter	Letter to normalize
 	 * @return			Normalized letter
@@ -4,9 +4,8 @@
 package cryptography;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * The Vigenere cipher is a method of encrypting alphabetic text by using 
@@ -17,6 +16,37 @@ import java.io.IOException;
  */
 class Vigenere
 {
+	/**
+	 * A candidate key along with its score, the higher the better
+	 */
+	static class Candidate
+	{
+		private final String m_strKey;
+		private final float m_fScore;
+		
+		Candidate(String key, float score)
+		{
+			m_strKey = key;
+			m_fScore = score;
+		}
+		
+		/**
+		 * @return	The key
+		 */
+		String getKey()
+		{
+			return m_strKey;
+		}
+		
+		/**
+		 * @return	How well the key fits, only comparable to scores of the same ranking
+		 */
+		float getScore()
+		{
+			return m_fScore;
+		}
+	}
+	
 	/**
 	 * Encrypts a text file using a Vigenere cipher
 	 * 
@@ -25,47 +55,30 @@ class Vigenere
 	 * @param key				Key to use
 	 */
 	static void encrypt(File fileToEncrypt, File encryptedFile, String key)
+	{
+		encrypt(fileToEncrypt, encryptedFile, key, CipherStream.Mode.Buffered);
+	}
+	
+	/**
+	 * Encrypts a text file using a Vigenere cipher
+	 * 
+	 * @param fileToEncrypt		File to encrypt
+	 * @param encryptedFile		File to store the encrypted version at
+	 * @param key				Key to use
+	 * @param mode				Buffered to decode chars, Mapped or Parallel for plain ASCII files
+	 */
+	static void encrypt(File fileToEncrypt, File encryptedFile, String key, CipherStream.Mode mode)
 	{
 		try
 		{
 			System.out.printf("Opening \"%s\" for encryption... ", fileToEncrypt.getPath());
 			
-			// Open file for encryption
-			FileReader reader = new FileReader(fileToEncrypt);
-			
-			// Create a file to store the encrypted version
-			FileWriter writer = new FileWriter(encryptedFile);
-			
-			// Go through every letter of the original text
-			int ch;
-			int chNum = 0;
-			int[] shifts = breakDownKey(key);
-			
-			while ((ch = reader.read()) != -1)
-			{
-				ch = Character.toLowerCase(ch);
-				
-				// Keep numbers, spaces, punc. intact
-				if (ch < 'a' || ch > 'z')
-				{
-					writer.write(ch);
-					continue;
-				}
-				
-				// Perform the shift and write to the new file
-				int encryptedCh = ch + shifts[chNum % key.length()];
-				encryptedCh = Util.normalizeLetter(encryptedCh);
-				
-				writer.write(encryptedCh);
-				chNum++;
-			}
+			// Shift the file block by block, the key position carries over between blocks
+			CipherEngine engine = CipherEngine.create(CipherEngine.Type.Vigenere, key, false);
+			CipherStream.transform(fileToEncrypt, encryptedFile, engine, mode);
 			
 			System.out.println("finished encrypting file.");
 			System.out.printf("Encrypted version stored at: \"%s\"\n", encryptedFile.getPath());
-			
-			reader.close();
-			writer.flush();
-			writer.close();
         }
 		catch (IOException e)
 		{
@@ -73,6 +86,62 @@ class Vigenere
         }
 	}
 	
+	/**
+	 * Encrypts a text file using a Vigenere cipher, indexing the letters of the cipher
+	 * on the way so any range of it can be decrypted later on with decryptRange().
+	 * The index is kept next to the encrypted file.
+	 * 
+	 * @param fileToEncrypt		File to encrypt
+	 * @param encryptedFile		File to store the encrypted version at
+	 * @param key				Key to use
+	 * @param mode				Buffered to decode chars, Mapped or Parallel for plain ASCII files
+	 */
+	static void encryptIndexed(File fileToEncrypt, File encryptedFile, String key, CipherStream.Mode mode)
+	{
+		try
+		{
+			System.out.printf("Opening \"%s\" for encryption... ", fileToEncrypt.getPath());
+			
+			CipherEngine engine = CipherEngine.create(CipherEngine.Type.Vigenere, key, false);
+			LetterIndex.Builder index = new LetterIndex.Builder(LetterIndex.DEFAULT_INTERVAL);
+			CipherStream.transform(fileToEncrypt, encryptedFile, engine, mode, index);
+			
+			File indexFile = LetterIndex.getIndexFile(encryptedFile);
+			index.build().save(indexFile);
+			
+			System.out.println("finished encrypting file.");
+			System.out.printf("Encrypted version stored at: \"%s\", its index at: \"%s\"\n",
+					encryptedFile.getPath(), indexFile.getPath());
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Decrypts a range of a text file encrypted using a Vigenere cipher, without going
+	 * through the rest of the file
+	 * 
+	 * @param encryptedFile		File to decrypt a range of
+	 * @param index				Letter index of the file, see LetterIndex.loadOrBuild()
+	 * @param key				Key to use
+	 * @param from				First byte of the range
+	 * @param to				Byte after the last one of the range
+	 * @return					The decrypted range
+	 * @throws IOException		If the file can't be read or the index is out of date
+	 */
+	static byte[] decryptRange(File encryptedFile, LetterIndex index, String key, long from, long to)
+			throws IOException
+	{
+		CipherEngine engine = CipherEngine.create(CipherEngine.Type.Vigenere, key, true);
+		ByteBuffer range = CipherStream.transformRange(encryptedFile, index, engine, from, to);
+		
+		byte[] bytes = new byte[range.remaining()];
+		range.get(bytes);
+		return bytes;
+	}
+	
 	/**
 	 * Decrypts a text file encrypted using a Vigenere cipher
 	 * 
@@ -81,47 +150,30 @@ class Vigenere
 	 * @param key				Key to use
 	 */
 	static void decrypt(File encryptedFile, File decryptedFile, String key)
+	{
+		decrypt(encryptedFile, decryptedFile, key, CipherStream.Mode.Buffered);
+	}
+	
+	/**
+	 * Decrypts a text file encrypted using a Vigenere cipher
+	 * 
+	 * @param encryptedFile		File to decrypt
+	 * @param decryptedFile		File to store the decrypted version at
+	 * @param key				Key to use
+	 * @param mode				Buffered to decode chars, Mapped or Parallel for plain ASCII files
+	 */
+	static void decrypt(File encryptedFile, File decryptedFile, String key, CipherStream.Mode mode)
 	{
 		try
 		{
 			System.out.printf("Opening \"%s\" for decryption... ", encryptedFile.getPath());
 			
-			// Open file for decryption
-			FileReader reader = new FileReader(encryptedFile);
-			
-			// Create a file to store the decrypted version
-			FileWriter writer = new FileWriter(decryptedFile);
-			
-			// Go through every letter of the cipher text
-			int ch;
-			int chNum = 0;
-			int[] shifts = breakDownKey(key);
-			
-			while ((ch = reader.read()) != -1)
-			{
-				ch = Character.toLowerCase(ch);
-				
-				// Keep numbers, spaces, punc. intact
-				if (ch < 'a' || ch > 'z')
-				{
-					writer.write(ch);
-					continue;
-				}
-				
-				// Perform the shift and write to the new file
-				int decryptedCh = ch - shifts[chNum % key.length()];
-				decryptedCh = Util.normalizeLetter(decryptedCh);
-				
-				writer.write(decryptedCh);
-				chNum++;
-			}
+			// Shift the file block by block, the key position carries over between blocks
+			CipherEngine engine = CipherEngine.create(CipherEngine.Type.Vigenere, key, true);
+			CipherStream.transform(encryptedFile, decryptedFile, engine, mode);
 			
 			System.out.println("finished decrypting file.");
 			System.out.printf("Decrypted version stored at: \"%s\"\n", decryptedFile.getPath());
-			
-			reader.close();
-			writer.flush();
-			writer.close();
         }
 		catch (IOException e)
 		{
@@ -129,6 +181,52 @@ class Vigenere
         }
 	}
 	
+	/**
+	 * Encrypts an ASCII text file using a Vigenere cipher, overwriting the original
+	 * 
+	 * @param file	File to encrypt in place
+	 * @param key	Key to use
+	 */
+	static void encryptInPlace(File file, String key)
+	{
+		try
+		{
+			System.out.printf("Encrypting \"%s\" in place... ", file.getPath());
+			
+			CipherEngine engine = CipherEngine.create(CipherEngine.Type.Vigenere, key, false);
+			CipherStream.transformInPlace(file, engine);
+			
+			System.out.println("finished encrypting file.");
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Decrypts an ASCII text file encrypted using a Vigenere cipher, overwriting the cipher
+	 * 
+	 * @param file	File to decrypt in place
+	 * @param key	Key to use
+	 */
+	static void decryptInPlace(File file, String key)
+	{
+		try
+		{
+			System.out.printf("Decrypting \"%s\" in place... ", file.getPath());
+			
+			CipherEngine engine = CipherEngine.create(CipherEngine.Type.Vigenere, key, true);
+			CipherStream.transformInPlace(file, engine);
+			
+			System.out.println("finished decrypting file.");
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
 	/**
 	 * Breaks down a Vigenere key into an array of ints containing shift values.
 	 * 
@@ -152,17 +250,15 @@ class Vigenere
 	 * 
 	 * @param cipher		Vigenere cipher to break down
 	 * @param keyLength		Key length of the vigenere cipher
-	 * @return				Streams (cosets) of monoalphabetical (Caesar) ciphers
+	 * @return				Streams (cosets) of monoalphabetical (Caesar) ciphers, viewing the cipher without copying it
 	 */
-	static String[] breakDownCipher(String cipher, int keyLength)
+	static CharSequence[] breakDownCipher(CharSequence cipher, int keyLength)
 	{
-		String[] streams = new String[keyLength];
-		int numOfCh = 0;
+		CharSequence[] streams = new CharSequence[keyLength];
 		
-		for (char ch : cipher.toCharArray())
+		for (int i = 0; i < keyLength; i++)
 		{
-			streams[numOfCh % keyLength] += Character.toString(ch);
-			numOfCh++;
+			streams[i] = new Coset(cipher, i, keyLength);
 		}
 		return streams;
 	}
@@ -174,10 +270,9 @@ class Vigenere
 	 * @param streams	Streams of several monoalphabetical ciphers broken down by breakDownCipher()
 	 * @return			A string to the key/password
 	 */
-	static String cryptAnalyse(Text sample, String[] streams)
+	static String cryptAnalyse(Text sample, CharSequence[] streams)
 	{
 		// Analyse each stream of encrypted characters
-		Text[] cosets = new Text[streams.length];
 		int[] keys = new int[streams.length];
 		int[] letters = new int[streams.length];
 		
@@ -185,8 +280,7 @@ class Vigenere
 		
 		for (int i = 0; i < streams.length; i++)
 		{
-			cosets[i] = new Text(streams[i]);
-			keys[i] = Caesar.cryptAnalyse( sample, cosets[i] );
+			keys[i] = Caesar.cryptAnalyse( sample, streams[i] );
 			
 			letters[i] = 'a' + keys[i];
 			letters[i] = Util.normalizeLetter( letters[i] );
@@ -209,4 +303,60 @@ class Vigenere
 		}
 		return key;
 	}
+	
+	/**
+	 * Ranks the keys of a Vigenere cipher. The best key takes the best shift of every stream,
+	 * the others swap the runner-up shifts of a single stream in. Frequency analysis mostly
+	 * gets a stream or two wrong at a time rather than all of them.
+	 * 
+	 * @param sample	A big chunk of English text
+	 * @param streams	Streams of several monoalphabetical ciphers broken down by breakDownCipher()
+	 * @param k			Number of keys to keep
+	 * @return			Up to k keys best first, scored by minus their total deviation in %
+	 */
+	static Candidate[] rankKeys(Text sample, CharSequence[] streams, int k)
+	{
+		System.out.println("Ranking vigenere keys...");
+		
+		TopK[] shifts = new TopK[streams.length];
+		float best = 0.0f;
+		
+		for (int i = 0; i < streams.length; i++)
+		{
+			shifts[i] = Caesar.rankShifts(sample, streams[i], k);
+			best += shifts[i].getScore(0);
+		}
+		
+		// Id 0 is the best key, 1 + i * (k - 1) + (r - 1) the one with shift of rank r in stream i
+		TopK ranking = new TopK(k);
+		ranking.offer(0, best);
+		for (int i = 0; i < streams.length; i++)
+		{
+			for (int r = 1; r < shifts[i].size(); r++)
+			{
+				ranking.offer(1 + i * (k - 1) + (r - 1), best - shifts[i].getScore(0) + shifts[i].getScore(r));
+			}
+		}
+		
+		Candidate[] candidates = new Candidate[ranking.size()];
+		for (int rank = 0; rank < ranking.size(); rank++)
+		{
+			char[] key = new char[streams.length];
+			for (int i = 0; i < streams.length; i++)
+			{
+				key[i] = (char) ('a' + shifts[i].getId(0));
+			}
+			
+			int id = ranking.getId(rank);
+			if (id > 0)
+			{
+				int stream = (id - 1) / (k - 1);
+				key[stream] = (char) ('a' + shifts[stream].getId((id - 1) % (k - 1) + 1));
+			}
+			
+			candidates[rank] = new Candidate(new String(key), ranking.getScore(rank));
+			System.out.printf("Key: %s | Deviation: %4.2f %%\n", candidates[rank].getKey(), -ranking.getScore(rank));
+		}
+		return candidates;
+	}
 }